@@ -0,0 +1,46 @@
+package raknetserver;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.DefaultByteBufHolder;
+import raknetserver.packet.RakNetConstants;
+import raknetserver.packet.Reliability;
+
+//user data with explicit reliability and order channel, plain ByteBuf writes are sent as reliable ordered on channel 0
+public class RakNetMessage extends DefaultByteBufHolder {
+
+	protected final Reliability reliability;
+	protected final int orderChannel;
+
+	public RakNetMessage(ByteBuf data, Reliability reliability) {
+		this(data, reliability, 0);
+	}
+
+	public RakNetMessage(ByteBuf data, Reliability reliability, int orderChannel) {
+		super(data);
+		if ((orderChannel < 0) || (orderChannel >= RakNetConstants.MAX_ORDER_CHANNELS)) {
+			throw new IllegalArgumentException("Invalid order channel " + orderChannel);
+		}
+		this.reliability = reliability;
+		this.orderChannel = orderChannel;
+	}
+
+	public Reliability getReliability() {
+		return reliability;
+	}
+
+	public int getOrderChannel() {
+		return orderChannel;
+	}
+
+	@Override
+	public RakNetMessage replace(ByteBuf content) {
+		return new RakNetMessage(content, reliability, orderChannel);
+	}
+
+	@Override
+	public RakNetMessage retain() {
+		super.retain();
+		return this;
+	}
+
+}
@@ -3,13 +3,20 @@ package raknetserver;
 import java.net.InetSocketAddress;
 
 import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFactory;
 import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelPipeline;
 import io.netty.channel.DefaultEventLoopGroup;
+import io.netty.channel.EventLoopGroup;
 import io.netty.channel.ServerChannel;
-import io.netty.handler.timeout.ReadTimeoutHandler;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.group.ChannelGroup;
+import raknetserver.packet.Reliability;
 import raknetserver.pipeline.ecnapsulated.EncapsulatedPacketInboundOrderer;
 import raknetserver.pipeline.ecnapsulated.EncapsulatedPacketOutboundOrder;
 import raknetserver.pipeline.ecnapsulated.EncapsulatedPacketSplitter;
@@ -18,11 +25,18 @@ import raknetserver.pipeline.internal.InternalPacketDecoder;
 import raknetserver.pipeline.internal.InternalPacketEncoder;
 import raknetserver.pipeline.internal.InternalPacketReadHandler;
 import raknetserver.pipeline.internal.InternalPacketWriteHandler;
+import raknetserver.pipeline.raknet.HandshakeCookieGenerator;
+import raknetserver.pipeline.raknet.RakNetFusedCodec;
 import raknetserver.pipeline.raknet.RakNetPacketConnectionEstablishHandler;
 import raknetserver.pipeline.raknet.RakNetPacketConnectionEstablishHandler.PingHandler;
 import raknetserver.pipeline.raknet.RakNetPacketDecoder;
 import raknetserver.pipeline.raknet.RakNetPacketEncoder;
 import raknetserver.pipeline.raknet.RakNetPacketReliabilityHandler;
+import raknetserver.pipeline.raknet.ReadTimeoutHandler;
+import raknetserver.pipeline.raknet.UnconnectedPingResponder;
+import raknetserver.udp.ReusePortUdpServerChannel;
+import raknetserver.utils.AddressAffinityEventLoopGroup;
+import raknetserver.utils.ConnectionRateLimiter;
 import raknetserver.utils.Constants;
 import udpserversocketchannel.channel.UdpServerChannel;
 
@@ -41,44 +55,113 @@ public class RakNetServer {
 	}
 
 	private ChannelFuture channel = null;
+	private UnconnectedPingResponder pingresponder = null;
+	private EventLoopGroup bossGroup = null;
+	private EventLoopGroup workerGroup = null;
 
 	public void start() {
+		UnconnectedPingResponder pingresponder = new UnconnectedPingResponder(pinghandler);
+		HandshakeCookieGenerator cookies = Constants.HANDSHAKE_COOKIES ? new HandshakeCookieGenerator(Constants.HANDSHAKE_COOKIE_LIFETIME) : null;
+		ConnectionRateLimiter ratelimiter = Constants.MAX_CONNECTIONS_PER_IP > 0 ? new ConnectionRateLimiter(Constants.MAX_CONNECTIONS_PER_IP) : null;
+		bossGroup = new DefaultEventLoopGroup(1);
+		workerGroup = new AddressAffinityEventLoopGroup(Constants.WORKER_THREADS);
 		ServerBootstrap bootstrap = new ServerBootstrap()
-		.group(new DefaultEventLoopGroup())
+		.group(bossGroup, workerGroup)
 		.channelFactory(new ChannelFactory<ServerChannel>() {
 			@Override
 			public ServerChannel newChannel() {
+				if (Constants.UDP_TRANSPORT.equals("epoll") && Epoll.isAvailable()) {
+					return new ReusePortUdpServerChannel(Constants.UDP_IO_THREADS, pingresponder, cookies, ratelimiter);
+				}
 				return new UdpServerChannel(Constants.UDP_IO_THREADS);
 			}
 		})
 		.childHandler(new ChannelInitializer<Channel>() {
 			@Override
 			protected void initChannel(Channel channel) throws Exception {
+				//reuse port server channel applies rate limit before creating child channel
+				if ((ratelimiter != null) && !(channel.parent() instanceof ReusePortUdpServerChannel)) {
+					if (!ratelimiter.tryAcquire(((InetSocketAddress) channel.remoteAddress()).getAddress())) {
+						channel.close();
+						return;
+					}
+				}
+				//only offline handshake handlers are created for new address, rest of them are added once connection is established
 				channel.pipeline()
 				.addLast("rns-timeout", new ReadTimeoutHandler(30))
 				.addLast("rns-rn-encoder", new RakNetPacketEncoder())
 				.addLast("rns-rn-decoder", new RakNetPacketDecoder())
-				.addLast("rns-rn-connect", new RakNetPacketConnectionEstablishHandler(pinghandler))
-				.addLast("rns-rn-reliability", new RakNetPacketReliabilityHandler())
-				.addLast("rns-e-ru", new EncapsulatedPacketUnsplitter())
-				.addLast("rns-e-ro", new EncapsulatedPacketInboundOrderer())
-				.addLast("rns-e-ws", new EncapsulatedPacketSplitter())
-				.addLast("rns-e-wo", new EncapsulatedPacketOutboundOrder())
-				.addLast("rns-i-encoder", new InternalPacketEncoder(userPacketId))
-				.addLast("rns-i-decoder", new InternalPacketDecoder(userPacketId))
-				.addLast("rns-i-readh", new InternalPacketReadHandler())
-				.addLast("rns-i-writeh", new InternalPacketWriteHandler());
+				.addLast("rns-rn-connect", new RakNetPacketConnectionEstablishHandler(pinghandler, pingresponder, cookies, RakNetServer.this::initConnectedPipeline));
 				userinit.init(channel);
 			}
 		});
 		channel = bootstrap.bind(local).syncUninterruptibly();
+		pingresponder.start(channel.channel());
+		this.pingresponder = pingresponder;
+	}
+
+	protected void initConnectedPipeline(ChannelPipeline pipeline, String baseName) {
+		if (Constants.FUSED_PIPELINE) {
+			pipeline.addAfter(baseName, "rns-fused", new RakNetFusedCodec(userPacketId));
+			return;
+		}
+		pipeline
+		.addAfter(baseName, "rns-rn-reliability", new RakNetPacketReliabilityHandler())
+		.addAfter("rns-rn-reliability", "rns-e-ru", new EncapsulatedPacketUnsplitter())
+		.addAfter("rns-e-ru", "rns-e-ro", new EncapsulatedPacketInboundOrderer())
+		.addAfter("rns-e-ro", "rns-e-ws", new EncapsulatedPacketSplitter())
+		.addAfter("rns-e-ws", "rns-e-wo", new EncapsulatedPacketOutboundOrder())
+		.addAfter("rns-e-wo", "rns-i-encoder", new InternalPacketEncoder(userPacketId))
+		.addAfter("rns-i-encoder", "rns-i-decoder", new InternalPacketDecoder(userPacketId))
+		.addAfter("rns-i-decoder", "rns-i-readh", new InternalPacketReadHandler())
+		.addAfter("rns-i-readh", "rns-i-writeh", new InternalPacketWriteHandler());
 	}
 
 	public void stop() {
+		if (pingresponder != null) {
+			pingresponder.stop();
+			pingresponder = null;
+		}
 		if (channel != null) {
 			channel.channel().close();
 			channel = null;
 		}
+		if (bossGroup != null) {
+			bossGroup.shutdownGracefully();
+			workerGroup.shutdownGracefully();
+			bossGroup = null;
+			workerGroup = null;
+		}
+	}
+
+	//takes ownership of the data, it is released once copied, so caller that still needs it has to retain it before the call
+	public void broadcast(ChannelGroup channels, ByteBuf data) {
+		broadcast(channels, data, Reliability.RELIABLE_ORDERED, 0);
+	}
+
+	//user packet id is prepended once and resulting buffer is shared by all channels, only per connection headers are written for each of them
+	//writes start right before internal packet encoder (or go directly to fused codec), so data is neither copied nor encoded again for each channel
+	//takes ownership of the data, same as channel writes, data is released even if group is empty
+	public void broadcast(ChannelGroup channels, ByteBuf data, Reliability reliability, int orderChannel) {
+		ByteBuf payload = ByteBufAllocator.DEFAULT.buffer(data.readableBytes() + 1);
+		try {
+			payload.writeByte(userPacketId);
+			payload.writeBytes(data, data.readerIndex(), data.readableBytes());
+			for (Channel channel : channels) {
+				ChannelHandlerContext ctx = channel.pipeline().context("rns-i-encoder");
+				if (ctx != null) {
+					ctx.writeAndFlush(new RakNetMessage(payload.retainedDuplicate(), reliability, orderChannel));
+					continue;
+				}
+				RakNetFusedCodec codec = channel.pipeline().get(RakNetFusedCodec.class);
+				if (codec != null) {
+					codec.writeAndFlushInternalData(payload.retainedDuplicate(), reliability, orderChannel);
+				}
+			}
+		} finally {
+			payload.release();
+			data.release();
+		}
 	}
 
 	public static interface UserChannelInitializer {
@@ -1,15 +1,59 @@
 package raknetserver.packet;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.util.AbstractReferenceCounted;
+import io.netty.util.Recycler;
+import io.netty.util.Recycler.Handle;
 import raknetserver.utils.Utils;
 
-public class EncapsulatedPacket {
+//owns one reference of data buffer, releases it when deallocated
+//pooled instances return to recycler after that, so packet shouldn't be used after its last release
+public class EncapsulatedPacket extends AbstractReferenceCounted {
+
+	private static final Recycler<EncapsulatedPacket> RECYCLER = new Recycler<EncapsulatedPacket>() {
+		@Override
+		protected EncapsulatedPacket newObject(Handle<EncapsulatedPacket> handle) {
+			return new EncapsulatedPacket(handle);
+		}
+	};
+
+	public static EncapsulatedPacket newInstance() {
+		EncapsulatedPacket packet = RECYCLER.get();
+		packet.setRefCnt(1);
+		return packet;
+	}
+
+	//takes ownership of the passed data buffer reference
+	public static EncapsulatedPacket newInstance(ByteBuf data, int reliability, int messageIndex, int sequenceIndex, int orderChannel, int orderIndex) {
+		EncapsulatedPacket packet = newInstance();
+		packet.data = data;
+		packet.reliability = reliability;
+		packet.messageIndex = messageIndex;
+		packet.sequenceIndex = sequenceIndex;
+		packet.orderChannel = orderChannel;
+		packet.orderIndex = orderIndex;
+		return packet;
+	}
+
+	public static EncapsulatedPacket newInstance(ByteBuf data, int reliability, int messageIndex, int sequenceIndex, int orderChannel, int orderIndex, int splitID, int splitCount, int splitIndex) {
+		EncapsulatedPacket packet = newInstance(data, reliability, messageIndex, sequenceIndex, orderChannel, orderIndex);
+		packet.hasSplit = true;
+		packet.splitID = splitID;
+		packet.splitCount = splitCount;
+		packet.splitIndex = splitIndex;
+		return packet;
+	}
+
+	private final Handle<EncapsulatedPacket> handle;
 
 	protected int reliability;
 	protected boolean hasSplit;
 
 	protected int messageIndex;
 
+	//sequenced packets carry their own index, order index of the channel stays the one of the last ordered packet
+	protected int sequenceIndex;
+
 	protected int orderChannel;
 	protected int orderIndex;
 
@@ -17,21 +61,29 @@ public class EncapsulatedPacket {
 	protected int splitID;
 	protected int splitIndex;
 
-	protected byte[] data;
+	protected ByteBuf data;
 
 	public EncapsulatedPacket() {
+		this.handle = null;
 	}
 
-	public EncapsulatedPacket(byte[] data, int messageIndex, int orderChannel, int orderIndex) {
-		this.data = data.clone();
-		this.reliability = 3;
+	private EncapsulatedPacket(Handle<EncapsulatedPacket> handle) {
+		this.handle = handle;
+	}
+
+	//takes ownership of the passed data buffer reference
+	public EncapsulatedPacket(ByteBuf data, int reliability, int messageIndex, int sequenceIndex, int orderChannel, int orderIndex) {
+		this.handle = null;
+		this.data = data;
+		this.reliability = reliability;
 		this.messageIndex = messageIndex;
+		this.sequenceIndex = sequenceIndex;
 		this.orderChannel = orderChannel;
 		this.orderIndex = orderIndex;
 	}
 
-	public EncapsulatedPacket(byte[] data, int messageIndex, int orderChannel, int orderIndex, int splitID, int splitCount, int splitIndex) {
-		this(data, messageIndex, orderChannel, orderIndex);
+	public EncapsulatedPacket(ByteBuf data, int reliability, int messageIndex, int sequenceIndex, int orderChannel, int orderIndex, int splitID, int splitCount, int splitIndex) {
+		this(data, reliability, messageIndex, sequenceIndex, orderChannel, orderIndex);
 		this.hasSplit = true;
 		this.splitID = splitID;
 		this.splitCount = splitCount;
@@ -49,6 +101,9 @@ public class EncapsulatedPacket {
 			if ((reliability >= 2) && (reliability != 5)) {
 				messageIndex = RakNetDataSerializer.readTriad(buf);
 			}
+			if ((reliability == 1) || (reliability == 4)) {
+				sequenceIndex = RakNetDataSerializer.readTriad(buf);
+			}
 			if ((reliability <= 4) && (reliability != 2)) {
 				orderIndex = RakNetDataSerializer.readTriad(buf);
 				orderChannel = buf.readUnsignedByte();
@@ -61,7 +116,7 @@ public class EncapsulatedPacket {
 			splitIndex = buf.readInt();
 		}
 
-		data = Utils.readBytes(buf, length);
+		data = buf.readRetainedSlice(length);
 	}
 
 	public void encode(ByteBuf buf) {
@@ -72,12 +127,15 @@ public class EncapsulatedPacket {
 		}
 		buf.writeByte(flag);
 
-		buf.writeShort((data.length << 3) & 0xFFFF);
+		buf.writeShort((data.readableBytes() << 3) & 0xFFFF);
 
 		if (reliability > 0) {
 			if ((reliability >= 2) && (reliability != 5)) {
 				RakNetDataSerializer.writeTriad(buf, messageIndex);
 			}
+			if ((reliability == 1) || (reliability == 4)) {
+				RakNetDataSerializer.writeTriad(buf, sequenceIndex);
+			}
 			if ((reliability <= 4) && (reliability != 2)) {
 				RakNetDataSerializer.writeTriad(buf, orderIndex);
 				buf.writeByte(orderChannel);
@@ -90,17 +148,34 @@ public class EncapsulatedPacket {
 			buf.writeInt(splitIndex);
 		}
 
-		buf.writeBytes(data);
+		//packet can be encoded multiple times (resend), so data reader index should stay untouched
+		buf.writeBytes(data, data.readerIndex(), data.readableBytes());
 	}
 
 	public int getReliability() {
 		return reliability;
 	}
 
+	public boolean isReliable() {
+		return (reliability >= 2) && (reliability != 5);
+	}
+
+	public boolean isOrdered() {
+		return reliability == 3;
+	}
+
+	public boolean isSequenced() {
+		return (reliability == 1) || (reliability == 4);
+	}
+
 	public int getMessageIndex() {
 		return messageIndex;
 	}
 
+	public int getSequenceIndex() {
+		return sequenceIndex;
+	}
+
 	public int getOrderChannel() {
 		return orderChannel;
 	}
@@ -126,11 +201,75 @@ public class EncapsulatedPacket {
 	}
 
 	public int getDataSize() {
-		return data.length;
+		return data.readableBytes();
+	}
+
+	public int getEncodedSize() {
+		return getHeaderSize(reliability, hasSplit) + data.readableBytes();
 	}
 
-	public byte[] getData() {
-		return data.clone();
+	public static int getHeaderSize(int reliability, boolean hasSplit) {
+		int size = 3; //flags + length
+		if ((reliability >= 2) && (reliability != 5)) {
+			size += 3; //message index
+		}
+		if ((reliability == 1) || (reliability == 4)) {
+			size += 3; //sequence index
+		}
+		if ((reliability == 1) || (reliability == 3) || (reliability == 4)) {
+			size += 4; //order index + order channel
+		}
+		if (hasSplit) {
+			size += 10; //split count + split id + split index
+		}
+		return size;
+	}
+
+	//returned buffer is valid only while packet is not released
+	public ByteBuf getData() {
+		return data;
+	}
+
+	@Override
+	public EncapsulatedPacket retain() {
+		super.retain();
+		return this;
+	}
+
+	@Override
+	public EncapsulatedPacket retain(int increment) {
+		super.retain(increment);
+		return this;
+	}
+
+	@Override
+	public EncapsulatedPacket touch() {
+		super.touch();
+		return this;
+	}
+
+	@Override
+	public EncapsulatedPacket touch(Object hint) {
+		data.touch(hint);
+		return this;
+	}
+
+	@Override
+	protected void deallocate() {
+		data.release();
+		data = null;
+		if (handle != null) {
+			reliability = 0;
+			hasSplit = false;
+			messageIndex = 0;
+			sequenceIndex = 0;
+			orderChannel = 0;
+			orderIndex = 0;
+			splitCount = 0;
+			splitID = 0;
+			splitIndex = 0;
+			handle.recycle(this);
+		}
 	}
 
 }
@@ -3,12 +3,17 @@ package raknetserver.packet;
 import java.net.InetSocketAddress;
 
 import io.netty.util.AttributeKey;
+import raknetserver.pipeline.raknet.congestion.CongestionControl;
 
 public final class RakNetConstants {
 
 	public static final byte[] MAGIC = new byte[] { (byte) 0x00, (byte) 0xff, (byte) 0xff, (byte) 0x00, (byte) 0xfe, (byte) 0xfe, (byte) 0xfe, (byte) 0xfe, (byte) 0xfd, (byte) 0xfd, (byte) 0xfd, (byte) 0xfd, (byte) 0x12, (byte) 0x34, (byte) 0x56, (byte) 0x78 };
 	public static final long SERVER_ID = 0x0000000012345678L;
 	public static final InetSocketAddress NULL_ADDR = new InetSocketAddress(0);
+	public static final int UDP_IP_HEADER_SIZE = 48; //ipv6 + udp headers, worst case
+	public static final int MAX_ORDER_CHANNELS = 32;
+	//smaller mtu wouldn't leave enough space for ack entries and packet splits
+	public static final int MIN_MTU = 576;
 
 	public static final int ID_RN_UNCONNECTED_PING = 0x01;
 	public static final int ID_RN_UNCONNECTED_PONG = 0x1C;
@@ -19,6 +24,8 @@ public final class RakNetConstants {
 	public static final int ID_RN_CONNECTION_FAILED = 17;
 	public static final int ID_RN_OPEN_CONNECTION_REQUEST_2 = 0x07;
 	public static final int ID_RN_OPEN_CONNECTION_REPLY_2 = 0x08;
+	public static final int ID_RN_ENCAPSULATED_DATA_FIRST = 0x80;
+	public static final int ID_RN_ENCAPSULATED_DATA = 0x8F;
 	public static final int ID_RN_ACK = 0xC0;
 	public static final int ID_RN_NACK = 0xA0;
 
@@ -31,5 +38,6 @@ public final class RakNetConstants {
 	public static final int ID_I_CLIENT_DISCONNECT = 0x15;
 
 	public static final AttributeKey<Integer> MTU = AttributeKey.valueOf("MTU");
+	public static final AttributeKey<CongestionControl> CONGESTION_CONTROL = AttributeKey.valueOf("CONGESTION_CONTROL");
 
 }
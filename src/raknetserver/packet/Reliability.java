@@ -0,0 +1,59 @@
+package raknetserver.packet;
+
+public enum Reliability {
+
+	UNRELIABLE(0), UNRELIABLE_SEQUENCED(1), RELIABLE(2), RELIABLE_ORDERED(3), RELIABLE_SEQUENCED(4);
+
+	private static final Reliability[] byId = new Reliability[8];
+	static {
+		for (Reliability reliability : values()) {
+			byId[reliability.id] = reliability;
+		}
+	}
+
+	private final int id;
+
+	Reliability(int id) {
+		this.id = id;
+	}
+
+	public int getId() {
+		return id;
+	}
+
+	public boolean isReliable() {
+		return (this == RELIABLE) || (this == RELIABLE_ORDERED) || (this == RELIABLE_SEQUENCED);
+	}
+
+	public boolean isOrdered() {
+		return this == RELIABLE_ORDERED;
+	}
+
+	public boolean isSequenced() {
+		return (this == UNRELIABLE_SEQUENCED) || (this == RELIABLE_SEQUENCED);
+	}
+
+	//split packets need all parts to be delivered, so unreliable ones are sent reliably
+	public Reliability toReliable() {
+		switch (this) {
+			case UNRELIABLE: {
+				return RELIABLE;
+			}
+			case UNRELIABLE_SEQUENCED: {
+				return RELIABLE_SEQUENCED;
+			}
+			default: {
+				return this;
+			}
+		}
+	}
+
+	public static Reliability getById(int id) {
+		Reliability reliability = byId[id];
+		if (reliability == null) {
+			throw new IllegalArgumentException("Unsupported reliability " + id);
+		}
+		return reliability;
+	}
+
+}
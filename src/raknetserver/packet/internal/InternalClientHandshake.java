@@ -1,10 +1,16 @@
 package raknetserver.packet.internal;
 
 import io.netty.buffer.ByteBuf;
+import raknetserver.packet.RakNetConstants;
 import raknetserver.packet.RakNetDataSerializer;
 
 public class InternalClientHandshake implements InternalPacket {
 
+	@Override
+	public int getId() {
+		return RakNetConstants.ID_I_CLIENT_HANDSHAKE;
+	}
+
 	@Override
 	public void decode(ByteBuf buf) {
 		for (int i = 0; i < 21; i++) {
@@ -1,11 +1,17 @@
 package raknetserver.packet.internal;
 
 import io.netty.buffer.ByteBuf;
+import raknetserver.packet.RakNetConstants;
 
 public class InternalConnectionRequest implements InternalPacket {
 
 	private long timestamp;
 
+	@Override
+	public int getId() {
+		return RakNetConstants.ID_I_CONNECTION_REQUEST;
+	}
+
 	@Override
 	public void decode(ByteBuf buf) {
 		buf.skipBytes(8); //client id
@@ -1,9 +1,15 @@
 package raknetserver.packet.internal;
 
 import io.netty.buffer.ByteBuf;
+import raknetserver.packet.RakNetConstants;
 
 public class InternalDisconnect implements InternalPacket {
 
+	@Override
+	public int getId() {
+		return RakNetConstants.ID_I_CLIENT_DISCONNECT;
+	}
+
 	@Override
 	public void decode(ByteBuf buf) {
 	}
@@ -1,8 +1,9 @@
 package raknetserver.packet.internal;
 
 import io.netty.buffer.ByteBuf;
+import raknetserver.packet.RakNetConstants;
 
-public class InternalKeepAlive implements InternalPacket {
+public abstract class InternalKeepAlive implements InternalPacket {
 
 	private long keepAlive;
 
@@ -27,12 +28,21 @@ public class InternalKeepAlive implements InternalPacket {
 		return keepAlive;
 	}
 
-	public static class InternalPing extends InternalKeepAlive {}
+	public static class InternalPing extends InternalKeepAlive {
+		@Override
+		public int getId() {
+			return RakNetConstants.ID_I_PING;
+		}
+	}
 
 	public static class InternalPong extends InternalKeepAlive {
 		public InternalPong(long keepAlive) {
 			super(keepAlive);
 		}
+		@Override
+		public int getId() {
+			return RakNetConstants.ID_I_PONG;
+		}
 	}
 
 }
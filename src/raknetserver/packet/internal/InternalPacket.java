@@ -4,6 +4,8 @@ import io.netty.buffer.ByteBuf;
 
 public interface InternalPacket {
 
+	public int getId();
+
 	public void decode(ByteBuf buf);
 
 	public void encode(ByteBuf buf);
@@ -1,54 +1,36 @@
 package raknetserver.packet.internal;
 
-import java.lang.reflect.Constructor;
-import java.lang.reflect.InvocationTargetException;
-import java.util.HashMap;
+import java.util.function.Supplier;
 
 import raknetserver.packet.RakNetConstants;
 import raknetserver.packet.internal.InternalKeepAlive.InternalPing;
-import raknetserver.packet.internal.InternalKeepAlive.InternalPong;
 
 public class InternalPacketRegistry {
 
 	@SuppressWarnings("unchecked")
-	private static final Constructor<? extends InternalPacket>[] idToPacket = new Constructor[2 << Byte.SIZE];
-	private static final HashMap<Class<? extends InternalPacket>, Integer> packetToId = new HashMap<>();
-
-	private static final void register(int packetId, Class<? extends InternalPacket> packetClass) {
-		packetToId.put(packetClass, packetId);
-		try {
-			idToPacket[packetId] = packetClass.getConstructor();
-		} catch (NoSuchMethodException | SecurityException e) {
-		}
+	private static final Supplier<? extends InternalPacket>[] idToPacket = (Supplier<? extends InternalPacket>[]) new Supplier<?>[1 << Byte.SIZE];
+
+	private static final void register(int packetId, Supplier<? extends InternalPacket> packetConstr) {
+		idToPacket[packetId] = packetConstr;
 	}
 
 	static {
-		register(RakNetConstants.ID_I_CONNECTION_REQUEST, InternalConnectionRequest.class);
-		register(RakNetConstants.ID_I_SERVER_HANDSHAKE, InternalServerHandshake.class);
-		register(RakNetConstants.ID_I_CLIENT_HANDSHAKE, InternalClientHandshake.class);
-		register(RakNetConstants.ID_I_CLIENT_DISCONNECT, InternalDisconnect.class);
-		register(RakNetConstants.ID_I_PING, InternalPing.class);
-		register(RakNetConstants.ID_I_PONG, InternalPong.class);
+		register(RakNetConstants.ID_I_CONNECTION_REQUEST, InternalConnectionRequest::new);
+		register(RakNetConstants.ID_I_CLIENT_HANDSHAKE, InternalClientHandshake::new);
+		register(RakNetConstants.ID_I_CLIENT_DISCONNECT, InternalDisconnect::new);
+		register(RakNetConstants.ID_I_PING, InternalPing::new);
 	}
 
 	public static int getId(InternalPacket packet) {
-		Integer packetId = packetToId.get(packet.getClass());
-		if (packetId == null) {
-			throw new IllegalArgumentException("internal packet class " + packet.getClass().getName() + " is not registered");
-		}
-		return packetId;
+		return packet.getId();
 	}
 
 	public static InternalPacket getPacket(int id) {
-		Constructor<? extends InternalPacket> constr = idToPacket[id];
+		Supplier<? extends InternalPacket> constr = idToPacket[id];
 		if (constr == null) {
 			throw new IllegalArgumentException(id + " is not a known(registered) RakNet internal packet");
 		}
-		try {
-			return constr.newInstance();
-		} catch (InstantiationException | IllegalAccessException | IllegalArgumentException | InvocationTargetException e) {
-			throw new RuntimeException("Unable to construct new packet instance", e);
-		}
+		return constr.get();
 	}
 
 }
@@ -16,6 +16,11 @@ public class InternalServerHandshake implements InternalPacket {
 		this.timestamp = timestamp;
 	}
 
+	@Override
+	public int getId() {
+		return RakNetConstants.ID_I_SERVER_HANDSHAKE;
+	}
+
 	@Override
 	public void decode(ByteBuf buf) {
 		throw new UnsupportedOperationException();
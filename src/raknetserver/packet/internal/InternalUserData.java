@@ -1,31 +1,123 @@
 package raknetserver.packet.internal;
 
 import io.netty.buffer.ByteBuf;
-import raknetserver.utils.Utils;
+import io.netty.util.AbstractReferenceCounted;
+import io.netty.util.Recycler;
+import io.netty.util.Recycler.Handle;
+import raknetserver.packet.Reliability;
 
-public class InternalUserData implements InternalPacket {
+//owns one reference of data buffer, releases it when deallocated
+public class InternalUserData extends AbstractReferenceCounted implements InternalPacket {
 
-	private byte[] data;
+	private static final Recycler<InternalUserData> RECYCLER = new Recycler<InternalUserData>() {
+		@Override
+		protected InternalUserData newObject(Handle<InternalUserData> handle) {
+			return new InternalUserData(handle);
+		}
+	};
+
+	public static InternalUserData newInstance() {
+		InternalUserData packet = RECYCLER.get();
+		packet.setRefCnt(1);
+		return packet;
+	}
+
+	//takes ownership of the passed data buffer reference
+	public static InternalUserData newInstance(ByteBuf data, Reliability reliability, int orderChannel) {
+		InternalUserData packet = newInstance();
+		packet.data = data;
+		packet.reliability = reliability;
+		packet.orderChannel = orderChannel;
+		return packet;
+	}
+
+	private final Handle<InternalUserData> handle;
+	private ByteBuf data;
+	private Reliability reliability = Reliability.RELIABLE_ORDERED;
+	private int orderChannel;
 
 	public InternalUserData() {
+		this.handle = null;
+	}
+
+	//takes ownership of the passed data buffer reference
+	public InternalUserData(ByteBuf data) {
+		this(data, Reliability.RELIABLE_ORDERED, 0);
 	}
 
-	public InternalUserData(byte[] data) {
+	public InternalUserData(ByteBuf data, Reliability reliability, int orderChannel) {
+		this.handle = null;
 		this.data = data;
+		this.reliability = reliability;
+		this.orderChannel = orderChannel;
+	}
+
+	private InternalUserData(Handle<InternalUserData> handle) {
+		this.handle = handle;
+	}
+
+	//user data packet id is configured per server, so it is written by encoder
+	@Override
+	public int getId() {
+		throw new UnsupportedOperationException();
 	}
 
 	@Override
 	public void decode(ByteBuf buf) {
-		data = Utils.readBytes(buf);
+		data = buf.readRetainedSlice(buf.readableBytes());
 	}
 
 	@Override
 	public void encode(ByteBuf buf) {
-		buf.writeBytes(data);
+		buf.writeBytes(data, data.readerIndex(), data.readableBytes());
+	}
+
+	public Reliability getReliability() {
+		return reliability;
+	}
+
+	public int getOrderChannel() {
+		return orderChannel;
 	}
 
-	public byte[] getData() {
+	//returned buffer is valid only while packet is not released
+	public ByteBuf getData() {
 		return data;
 	}
 
+	@Override
+	public InternalUserData retain() {
+		super.retain();
+		return this;
+	}
+
+	@Override
+	public InternalUserData retain(int increment) {
+		super.retain(increment);
+		return this;
+	}
+
+	@Override
+	public InternalUserData touch() {
+		super.touch();
+		return this;
+	}
+
+	@Override
+	public InternalUserData touch(Object hint) {
+		data.touch(hint);
+		return this;
+	}
+
+	@Override
+	protected void deallocate() {
+		data.release();
+		data = null;
+		if (handle != null) {
+			reliability = Reliability.RELIABLE_ORDERED;
+			orderChannel = 0;
+			handle.recycle(this);
+		}
+	}
+
 }
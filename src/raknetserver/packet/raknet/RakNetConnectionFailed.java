@@ -5,6 +5,11 @@ import raknetserver.packet.RakNetConstants;
 
 public class RakNetConnectionFailed implements RakNetPacket {
 
+	@Override
+	public int getId() {
+		return RakNetConstants.ID_RN_CONNECTION_FAILED;
+	}
+
 	@Override
 	public void decode(ByteBuf buf) {
 	}
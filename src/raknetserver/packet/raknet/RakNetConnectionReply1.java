@@ -5,12 +5,26 @@ import raknetserver.packet.RakNetConstants;
 
 public class RakNetConnectionReply1 implements RakNetPacket {
 
-	private static final boolean hasSecurity = false;
-
 	private final int mtu;
+	private final boolean hasSecurity;
+	private final int cookie;
 
 	public RakNetConnectionReply1(int mtu) {
 		this.mtu = mtu;
+		this.hasSecurity = false;
+		this.cookie = 0;
+	}
+
+	//cookie has to be sent back by client in connection request 2
+	public RakNetConnectionReply1(int mtu, int cookie) {
+		this.mtu = mtu;
+		this.hasSecurity = true;
+		this.cookie = cookie;
+	}
+
+	@Override
+	public int getId() {
+		return RakNetConstants.ID_RN_OPEN_CONNECTION_REPLY_1;
 	}
 
 	@Override
@@ -23,6 +37,9 @@ public class RakNetConnectionReply1 implements RakNetPacket {
 		buf.writeBytes(RakNetConstants.MAGIC);
 		buf.writeLong(RakNetConstants.SERVER_ID);
 		buf.writeBoolean(hasSecurity);
+		if (hasSecurity) {
+			buf.writeInt(cookie);
+		}
 		buf.writeShort(mtu);
 	}
 
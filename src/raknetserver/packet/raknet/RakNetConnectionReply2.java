@@ -13,6 +13,11 @@ public class RakNetConnectionReply2 implements RakNetPacket {
 		this.mtu = mtu;
 	}
 
+	@Override
+	public int getId() {
+		return RakNetConstants.ID_RN_OPEN_CONNECTION_REPLY_2;
+	}
+
 	@Override
 	public void decode(ByteBuf buf) {
 		throw new UnsupportedOperationException();
@@ -8,6 +8,11 @@ public class RakNetConnectionRequest1 implements RakNetPacket {
 	private int rakNetProtocolVersion;
 	private int mtu;
 
+	@Override
+	public int getId() {
+		return RakNetConstants.ID_RN_OPEN_CONNECTION_REQUEST_1;
+	}
+
 	@Override
 	public void decode(ByteBuf buf) {
 		buf.skipBytes(RakNetConstants.MAGIC.length);
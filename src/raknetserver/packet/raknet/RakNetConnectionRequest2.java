@@ -6,12 +6,34 @@ import raknetserver.packet.RakNetDataSerializer;
 
 public class RakNetConnectionRequest2 implements RakNetPacket {
 
+	//magic + mtu + guid, and ipv4 or ipv6 address
+	private static final int SIZE_WITHOUT_ADDRESS = RakNetConstants.MAGIC.length + 2 + 8;
+	private static final int IPV4_ADDRESS_SIZE = 7;
+	private static final int IPV6_ADDRESS_SIZE = 29;
+	private static final int CHALLENGE_SIZE = 64;
+
+	private boolean hasCookie;
+	private int cookie;
 	private int mtu;
 	private long guid;
 
+	@Override
+	public int getId() {
+		return RakNetConstants.ID_RN_OPEN_CONNECTION_REQUEST_2;
+	}
+
 	@Override
 	public void decode(ByteBuf buf) {
+		//packet has cookie if reply 1 had security flag set, its presence can only be determined by packet size
+		int addressSize = buf.readableBytes() - SIZE_WITHOUT_ADDRESS;
+		hasCookie = (addressSize != IPV4_ADDRESS_SIZE) && (addressSize != IPV6_ADDRESS_SIZE);
 		buf.skipBytes(RakNetConstants.MAGIC.length);
+		if (hasCookie) {
+			cookie = buf.readInt();
+			if (buf.readBoolean()) {
+				buf.skipBytes(CHALLENGE_SIZE);
+			}
+		}
 		RakNetDataSerializer.readAddress(buf);
 		mtu = buf.readShort();
 		guid = buf.readLong();
@@ -22,6 +44,14 @@ public class RakNetConnectionRequest2 implements RakNetPacket {
 		throw new UnsupportedOperationException();
 	}
 
+	public boolean hasCookie() {
+		return hasCookie;
+	}
+
+	public int getCookie() {
+		return cookie;
+	}
+
 	public int getMtu() {
 		return mtu;
 	}
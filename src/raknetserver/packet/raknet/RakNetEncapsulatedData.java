@@ -3,26 +3,63 @@ package raknetserver.packet.raknet;
 import java.util.ArrayList;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.util.AbstractReferenceCounted;
+import io.netty.util.Recycler;
+import io.netty.util.Recycler.Handle;
 import raknetserver.packet.EncapsulatedPacket;
+import raknetserver.packet.RakNetConstants;
 import raknetserver.packet.RakNetDataSerializer;
 
-public class RakNetEncapsulatedData implements RakNetPacket {
+//owns one reference of each contained encapsulated packet, releases them when deallocated
+//pooled instances keep their packets list when recycled, so it doesn't have to be allocated for every datagram
+public class RakNetEncapsulatedData extends AbstractReferenceCounted implements RakNetPacket {
+
+	public static final int HEADER_SIZE = 4; //packet id + seq id
+
+	private static final Recycler<RakNetEncapsulatedData> RECYCLER = new Recycler<RakNetEncapsulatedData>() {
+		@Override
+		protected RakNetEncapsulatedData newObject(Handle<RakNetEncapsulatedData> handle) {
+			return new RakNetEncapsulatedData(handle);
+		}
+	};
+
+	public static RakNetEncapsulatedData newInstance() {
+		RakNetEncapsulatedData packet = RECYCLER.get();
+		packet.setRefCnt(1);
+		return packet;
+	}
+
+	private final Handle<RakNetEncapsulatedData> handle;
 
 	private int seqId;
+	private long sendTime;
+	private long resendDeadline;
+	private int resendCount;
 	private final ArrayList<EncapsulatedPacket> packets = new ArrayList<EncapsulatedPacket>();
 
 	public RakNetEncapsulatedData() {
+		this.handle = null;
 	}
 
 	public RakNetEncapsulatedData(EncapsulatedPacket epacket) {
+		this();
 		packets.add(epacket);
 	}
 
+	private RakNetEncapsulatedData(Handle<RakNetEncapsulatedData> handle) {
+		this.handle = handle;
+	}
+
+	@Override
+	public int getId() {
+		return RakNetConstants.ID_RN_ENCAPSULATED_DATA;
+	}
+
 	@Override
 	public void decode(ByteBuf buf) {
 		seqId = RakNetDataSerializer.readTriad(buf);
 		while (buf.isReadable()) {
-			EncapsulatedPacket packet = new EncapsulatedPacket();
+			EncapsulatedPacket packet = EncapsulatedPacket.newInstance();
 			packet.decode(buf);
 			packets.add(packet);
 		}
@@ -36,6 +73,14 @@ public class RakNetEncapsulatedData implements RakNetPacket {
 		}
 	}
 
+	public int getEncodedSize() {
+		int size = HEADER_SIZE;
+		for (EncapsulatedPacket packet : packets) {
+			size += packet.getEncodedSize();
+		}
+		return size;
+	}
+
 	public int getSeqId() {
 		return seqId;
 	}
@@ -44,8 +89,74 @@ public class RakNetEncapsulatedData implements RakNetPacket {
 		this.seqId = seqId;
 	}
 
+	public long getSendTime() {
+		return sendTime;
+	}
+
+	public void setSendTime(long sendTime) {
+		this.sendTime = sendTime;
+	}
+
+	public long getResendDeadline() {
+		return resendDeadline;
+	}
+
+	public void setResendDeadline(long resendDeadline) {
+		this.resendDeadline = resendDeadline;
+	}
+
+	public int getResendCount() {
+		return resendCount;
+	}
+
+	public void incResendCount() {
+		resendCount++;
+	}
+
+	public void addPacket(EncapsulatedPacket epacket) {
+		packets.add(epacket);
+	}
+
+	//unreliable packets are not resent, returns false if nothing is left to resend
+	public boolean removeUnreliablePackets() {
+		packets.removeIf(packet -> {
+			if (!packet.isReliable()) {
+				packet.release();
+				return true;
+			}
+			return false;
+		});
+		return !packets.isEmpty();
+	}
+
 	public ArrayList<EncapsulatedPacket> getPackets() {
 		return packets;
 	}
 
+	@Override
+	public RakNetEncapsulatedData retain() {
+		super.retain();
+		return this;
+	}
+
+	@Override
+	public RakNetEncapsulatedData touch(Object hint) {
+		return this;
+	}
+
+	@Override
+	protected void deallocate() {
+		for (EncapsulatedPacket packet : packets) {
+			packet.release();
+		}
+		packets.clear();
+		if (handle != null) {
+			seqId = 0;
+			sendTime = 0;
+			resendDeadline = 0;
+			resendCount = 0;
+			handle.recycle(this);
+		}
+	}
+
 }
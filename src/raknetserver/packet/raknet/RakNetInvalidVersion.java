@@ -7,6 +7,11 @@ public class RakNetInvalidVersion implements RakNetPacket {
 
 	public static final int VALID_VERSION = 8;
 
+	@Override
+	public int getId() {
+		return RakNetConstants.ID_RN_INVALID_VERSION;
+	}
+
 	@Override
 	public void decode(ByteBuf buf) {
 		throw new UnsupportedOperationException();
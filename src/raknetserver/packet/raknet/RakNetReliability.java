@@ -1,13 +1,22 @@
 package raknetserver.packet.raknet;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.util.AbstractReferenceCounted;
+import io.netty.util.Recycler;
+import io.netty.util.Recycler.Handle;
+import raknetserver.packet.RakNetConstants;
 import raknetserver.packet.RakNetDataSerializer;
 
-public class RakNetReliability implements RakNetPacket {
+//entries are stored as id ranges in reusable arrays, pooled instances keep them when recycled
+public abstract class RakNetReliability extends AbstractReferenceCounted implements RakNetPacket {
 
-	private REntry[] entries;
+	private final Handle<RakNetReliability> handle;
+	private int[] idstarts = new int[16];
+	private int[] idfinishes = new int[16];
+	private int count;
 
 	public RakNetReliability() {
+		this.handle = null;
 	}
 
 	public RakNetReliability(int id) {
@@ -15,50 +24,100 @@ public class RakNetReliability implements RakNetPacket {
 	}
 
 	public RakNetReliability(int idstart, int idfinish) {
-		entries = new REntry[1];
-		entries[0] = new REntry(idstart, idfinish);
+		this();
+		addEntry(idstart, idfinish);
+	}
+
+	protected RakNetReliability(Handle<RakNetReliability> handle) {
+		this.handle = handle;
 	}
 
 	@Override
 	public void decode(ByteBuf buf) {
-		entries = new REntry[buf.readUnsignedShort()];
-		for (int i = 0; i < entries.length; i++) {
+		int entries = buf.readUnsignedShort();
+		for (int i = 0; i < entries; i++) {
 			boolean single = buf.readBoolean();
-			if (single) {
-				entries[i] = new REntry(RakNetDataSerializer.readTriad(buf));
-			} else {
-				entries[i] = new REntry(RakNetDataSerializer.readTriad(buf), RakNetDataSerializer.readTriad(buf));
-			}
+			int idstart = RakNetDataSerializer.readTriad(buf);
+			addEntry(idstart, single ? idstart : RakNetDataSerializer.readTriad(buf));
 		}
 	}
 
 	@Override
 	public void encode(ByteBuf buf) {
-		buf.writeShort(entries.length);
-		for (REntry entry : entries) {
-			buf.writeBoolean(false);
-			RakNetDataSerializer.writeTriad(buf, entry.idstart);
-			RakNetDataSerializer.writeTriad(buf, entry.idfinish);
+		buf.writeShort(count);
+		for (int i = 0; i < count; i++) {
+			if (idstarts[i] == idfinishes[i]) {
+				buf.writeBoolean(true);
+				RakNetDataSerializer.writeTriad(buf, idstarts[i]);
+			} else {
+				buf.writeBoolean(false);
+				RakNetDataSerializer.writeTriad(buf, idstarts[i]);
+				RakNetDataSerializer.writeTriad(buf, idfinishes[i]);
+			}
 		}
 	}
 
-	public REntry[] getEntries() {
-		return entries;
+	public static int getMaxEntries(int size) {
+		return (size - 3) / 7; //packet id + entries count, entry is single flag + two triads at most
 	}
 
-	public static class REntry {
-		public final int idstart;
-		public final int idfinish;
-		public REntry(int id) {
-			this(id, id);
+	public void addEntry(int idstart, int idfinish) {
+		if (count == idstarts.length) {
+			int[] newIdStarts = new int[count << 1];
+			int[] newIdFinishes = new int[count << 1];
+			System.arraycopy(idstarts, 0, newIdStarts, 0, count);
+			System.arraycopy(idfinishes, 0, newIdFinishes, 0, count);
+			idstarts = newIdStarts;
+			idfinishes = newIdFinishes;
 		}
-		public REntry(int idstart, int idfinish) {
-			this.idstart = idstart;
-			this.idfinish = idfinish;
+		idstarts[count] = idstart;
+		idfinishes[count] = idfinish;
+		count++;
+	}
+
+	public int getEntryCount() {
+		return count;
+	}
+
+	public int getIdStart(int index) {
+		return idstarts[index];
+	}
+
+	public int getIdFinish(int index) {
+		return idfinishes[index];
+	}
+
+	@Override
+	public RakNetReliability retain() {
+		super.retain();
+		return this;
+	}
+
+	@Override
+	public RakNetReliability touch(Object hint) {
+		return this;
+	}
+
+	@Override
+	protected void deallocate() {
+		if (handle != null) {
+			count = 0;
+			handle.recycle(this);
 		}
 	}
 
 	public static class RakNetACK extends RakNetReliability {
+		private static final Recycler<RakNetReliability> RECYCLER = new Recycler<RakNetReliability>() {
+			@Override
+			protected RakNetReliability newObject(Handle<RakNetReliability> handle) {
+				return new RakNetACK(handle);
+			}
+		};
+		public static RakNetACK newInstance() {
+			RakNetACK packet = (RakNetACK) RECYCLER.get();
+			packet.setRefCnt(1);
+			return packet;
+		}
 		public RakNetACK() {
 		}
 		public RakNetACK(int id) {
@@ -67,8 +126,26 @@ public class RakNetReliability implements RakNetPacket {
 		public RakNetACK(int idstart, int idfinish) {
 			super(idstart, idfinish);
 		}
+		private RakNetACK(Handle<RakNetReliability> handle) {
+			super(handle);
+		}
+		@Override
+		public int getId() {
+			return RakNetConstants.ID_RN_ACK;
+		}
 	}
 	public static class RakNetNACK extends RakNetReliability {
+		private static final Recycler<RakNetReliability> RECYCLER = new Recycler<RakNetReliability>() {
+			@Override
+			protected RakNetReliability newObject(Handle<RakNetReliability> handle) {
+				return new RakNetNACK(handle);
+			}
+		};
+		public static RakNetNACK newInstance() {
+			RakNetNACK packet = (RakNetNACK) RECYCLER.get();
+			packet.setRefCnt(1);
+			return packet;
+		}
 		public RakNetNACK() {
 		}
 		public RakNetNACK(int id) {
@@ -77,6 +154,13 @@ public class RakNetReliability implements RakNetPacket {
 		public RakNetNACK(int idstart, int idfinish) {
 			super(idstart, idfinish);
 		}
+		private RakNetNACK(Handle<RakNetReliability> handle) {
+			super(handle);
+		}
+		@Override
+		public int getId() {
+			return RakNetConstants.ID_RN_NACK;
+		}
 	}
 
 }
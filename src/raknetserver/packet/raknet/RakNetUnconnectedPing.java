@@ -7,6 +7,11 @@ public class RakNetUnconnectedPing implements RakNetPacket {
 
 	private long clientTime;
 
+	@Override
+	public int getId() {
+		return RakNetConstants.ID_RN_UNCONNECTED_PING;
+	}
+
 	@Override
 	public void decode(ByteBuf buf) {
 		this.clientTime = buf.readLong();
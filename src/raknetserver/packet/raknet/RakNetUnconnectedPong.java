@@ -14,6 +14,11 @@ public class RakNetUnconnectedPong implements RakNetPacket {
 		this.info = info;
 	}
 
+	@Override
+	public int getId() {
+		return RakNetConstants.ID_RN_UNCONNECTED_PONG;
+	}
+
 	@Override
 	public void decode(ByteBuf buf) {
 		throw new UnsupportedOperationException();
@@ -1,89 +1,146 @@
 package raknetserver.pipeline.ecnapsulated;
 
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.Collections;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
 
-import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.DecoderException;
 import io.netty.handler.codec.MessageToMessageDecoder;
 import raknetserver.packet.EncapsulatedPacket;
+import raknetserver.packet.RakNetConstants;
 import raknetserver.utils.Constants;
+import raknetserver.utils.Utils;
 
 public class EncapsulatedPacketInboundOrderer extends MessageToMessageDecoder<EncapsulatedPacket> {
 
-	private final OrderedChannelPacketQueue[] channels = new OrderedChannelPacketQueue[8];
+	//queues are created only for order channels that are actually used
+	private final OrderedChannelPacketQueue[] channels = new OrderedChannelPacketQueue[RakNetConstants.MAX_ORDER_CHANNELS];
+
+	//sequenced packets are never buffered, packets older than latest delivered one are dropped
+	//raknet restarts sequence index after every ordered packet, so packets are compared by order index first
+	private final int[] lastSequencedOrderIndexes = new int[RakNetConstants.MAX_ORDER_CHANNELS];
+	private final int[] lastSequencedIndexes = new int[RakNetConstants.MAX_ORDER_CHANNELS];
 	{
-		for (int i = 0; i < channels.length; i++) {
-			channels[i] = new OrderedChannelPacketQueue();
-		}
+		Arrays.fill(lastSequencedOrderIndexes, -1);
+		Arrays.fill(lastSequencedIndexes, -1);
 	}
 
 	@Override
 	protected void decode(ChannelHandlerContext ctx, EncapsulatedPacket packet, List<Object> list) throws Exception {
-		if (packet.getReliability() == 3) {
-			channels[packet.getOrderChannel()].getOrdered(packet).forEach(opacket -> list.add(Unpooled.wrappedBuffer(opacket.getData())));
+		order(packet, list);
+	}
+
+	//adds data of packets that are now in order to the list, references are transferred to the list
+	public void order(EncapsulatedPacket packet, List<Object> list) {
+		if (packet.isOrdered()) {
+			int orderChannel = packet.getOrderChannel();
+			OrderedChannelPacketQueue channel = channels[orderChannel];
+			if (channel == null) {
+				channel = channels[orderChannel] = new OrderedChannelPacketQueue();
+			}
+			channel.getOrdered(packet, list);
+		} else if (packet.isSequenced()) {
+			int orderChannel = packet.getOrderChannel();
+			int orderDiff = Utils.seqDiff(packet.getOrderIndex(), lastSequencedOrderIndexes[orderChannel]);
+			if ((orderDiff > 0) || ((orderDiff == 0) && (Utils.seqDiff(packet.getSequenceIndex(), lastSequencedIndexes[orderChannel]) > 0))) {
+				lastSequencedOrderIndexes[orderChannel] = packet.getOrderIndex();
+				lastSequencedIndexes[orderChannel] = packet.getSequenceIndex();
+				list.add(packet.getData().retain());
+			}
 		} else {
-			list.add(Unpooled.wrappedBuffer(packet.getData()));
+			list.add(packet.getData().retain());
 		}
 	}
 
-	protected static class OrderedChannelPacketQueue {
-
-		private final HashMap<Integer, EncapsulatedPacket> queue = new HashMap<>(300);
-		private int lastReceivedIndex = -1;
-		private int lastOrderedIndex = -1;
+	@Override
+	public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+		clear();
+		super.handlerRemoved(ctx);
+	}
 
-		public Collection<EncapsulatedPacket> getOrdered(EncapsulatedPacket epacket) {
-			Collection<EncapsulatedPacket> ordered = getOrdered0(epacket);
-			if (queue.size() > Constants.MAX_PACKET_LOSS) {
-				throw new DecoderException("Too big packet loss (missed ordered packets)");
+	public void clear() {
+		for (OrderedChannelPacketQueue channel : channels) {
+			if (channel != null) {
+				channel.release();
 			}
-			return ordered;
 		}
+	}
+
+	//packets that arrived before missing ones wait in ring buffer at orderIndex & mask
+	//every waiting packet is at most capacity indexes ahead of the last ordered one, so slots never collide
+	protected static class OrderedChannelPacketQueue {
 
-		protected Collection<EncapsulatedPacket> getOrdered0(EncapsulatedPacket epacket) {
-			int messageIndex = epacket.getOrderIndex();
+		private EncapsulatedPacket[] queue = new EncapsulatedPacket[16];
+		private int mask = queue.length - 1;
+		private int queued = 0;
+		private int lastOrderedIndex = -1;
+
+		//ordered packets data is added to the list directly, references are transferred to the list
+		public void getOrdered(EncapsulatedPacket epacket, List<Object> list) {
+			int orderIndex = epacket.getOrderIndex();
+			int diff = Utils.seqDiff(orderIndex, lastOrderedIndex);
 			//duplicate packet, ignore it
-			if (messageIndex <= lastOrderedIndex) {
-				return Collections.emptyList();
-			}
-			//some packets were lost, put packet in queue and wait
-			if ((messageIndex - lastReceivedIndex) > 1) {
-				queue.put(messageIndex, epacket);
-				lastReceivedIndex = messageIndex;
-				return Collections.emptyList();
+			if (diff <= 0) {
+				return;
 			}
-			//no packets were lost since last received, we have two cases
-			//1st - no missing packets - add packet to list
-			//2nd - have missing packets - put packet in queue
-			if ((messageIndex - lastReceivedIndex) == 1) {
-				lastReceivedIndex = messageIndex;
-				if (queue.isEmpty()) {
-					lastOrderedIndex = lastReceivedIndex;
-					return Collections.singletonList(epacket);
-				} else {
-					queue.put(messageIndex, epacket);
-					return Collections.emptyList();
+			//no missing packets, add packet to list and also all the waiting packets that are now in order
+			if (diff == 1) {
+				list.add(epacket.getData().retain());
+				lastOrderedIndex = orderIndex;
+				if (queued > 0) {
+					pollOrdered(list);
 				}
+				return;
+			}
+			//some packets are missing, put packet in queue and wait
+			if (diff > Constants.MAX_PACKET_LOSS) {
+				throw new DecoderException("Too big packet loss (missed ordered packets)");
 			}
+			if (diff > mask) {
+				grow(diff);
+			}
+			int slot = orderIndex & mask;
 			//duplicate packet, ignore it
-			if (queue.containsKey(messageIndex)) {
-				return  Collections.emptyList();
+			if (queue[slot] != null) {
+				return;
 			}
-			//we received a missing packet, put packet in queue
-			queue.put(messageIndex, epacket);
-			//return as much ordered packets as we can
-			ArrayList<EncapsulatedPacket> ordered = new ArrayList<>();
+			queue[slot] = epacket.retain();
+			queued++;
+		}
+
+		protected void pollOrdered(List<Object> list) {
 			EncapsulatedPacket foundPacket = null;
-			while ((foundPacket = queue.remove(lastOrderedIndex + 1)) != null) {
-				ordered.add(foundPacket);
-				lastOrderedIndex++;
+			while ((foundPacket = queue[Utils.seqAdd(lastOrderedIndex, 1) & mask]) != null) {
+				//pooled packet is reset once released, so index is read before that
+				int orderIndex = foundPacket.getOrderIndex();
+				queue[orderIndex & mask] = null;
+				queued--;
+				list.add(foundPacket.getData().retain());
+				foundPacket.release();
+				lastOrderedIndex = orderIndex;
+			}
+		}
+
+		protected void grow(int diff) {
+			EncapsulatedPacket[] newQueue = new EncapsulatedPacket[Integer.highestOneBit(diff) << 1];
+			int newMask = newQueue.length - 1;
+			for (EncapsulatedPacket packet : queue) {
+				if (packet != null) {
+					newQueue[packet.getOrderIndex() & newMask] = packet;
+				}
+			}
+			queue = newQueue;
+			mask = newMask;
+		}
+
+		public void release() {
+			for (int i = 0; i < queue.length; i++) {
+				if (queue[i] != null) {
+					queue[i].release();
+					queue[i] = null;
+				}
 			}
-			return ordered;
+			queued = 0;
 		}
 
 	}
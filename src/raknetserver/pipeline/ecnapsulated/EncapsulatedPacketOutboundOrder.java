@@ -5,19 +5,50 @@ import java.util.List;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.MessageToMessageEncoder;
+import raknetserver.RakNetMessage;
 import raknetserver.packet.EncapsulatedPacket;
+import raknetserver.packet.RakNetConstants;
+import raknetserver.packet.Reliability;
 import raknetserver.utils.Utils;
 
-public class EncapsulatedPacketOutboundOrder extends MessageToMessageEncoder<ByteBuf> {
+public class EncapsulatedPacketOutboundOrder extends MessageToMessageEncoder<Object> {
 
 	@Override
-	protected void encode(ChannelHandlerContext ctx, ByteBuf buffer, List<Object> list) throws Exception {
-		list.add(new EncapsulatedPacket(Utils.readBytes(buffer), 0, 0, getNextOrderIndex()));
+	public boolean acceptOutboundMessage(Object msg) throws Exception {
+		return (msg instanceof ByteBuf) || (msg instanceof RakNetMessage);
 	}
 
-	private int currentOrderIndex = 0;
-	private int getNextOrderIndex() {
-		return currentOrderIndex++ % 16777216;
+	@Override
+	protected void encode(ChannelHandlerContext ctx, Object msg, List<Object> list) throws Exception {
+		if (msg instanceof RakNetMessage) {
+			RakNetMessage message = (RakNetMessage) msg;
+			list.add(createPacket(message.content().retain(), message.getReliability(), message.getOrderChannel()));
+		} else {
+			list.add(createPacket(((ByteBuf) msg).retain(), Reliability.RELIABLE_ORDERED, 0));
+		}
+	}
+
+	public EncapsulatedPacket createPacket(ByteBuf data, Reliability reliability, int orderChannel) {
+		int orderIndex = 0;
+		int sequenceIndex = 0;
+		if (reliability.isOrdered()) {
+			orderIndex = getNextIndex(orderIndexes, orderChannel);
+		} else if (reliability.isSequenced()) {
+			//sequenced packet is sent with the order index the next ordered packet will get, like raknet does
+			orderIndex = orderIndexes[orderChannel];
+			sequenceIndex = getNextIndex(sequenceIndexes, orderChannel);
+		}
+		return EncapsulatedPacket.newInstance(data, reliability.getId(), 0, sequenceIndex, orderChannel, orderIndex);
+	}
+
+	//ordered and sequenced packets have independent indexes in each order channel
+	private final int[] orderIndexes = new int[RakNetConstants.MAX_ORDER_CHANNELS];
+	private final int[] sequenceIndexes = new int[RakNetConstants.MAX_ORDER_CHANNELS];
+
+	private static int getNextIndex(int[] indexes, int orderChannel) {
+		int index = indexes[orderChannel];
+		indexes[orderChannel] = Utils.seqAdd(index, 1);
+		return index;
 	}
 
 }
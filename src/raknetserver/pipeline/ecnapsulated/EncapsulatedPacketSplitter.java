@@ -1,48 +1,71 @@
 package raknetserver.pipeline.ecnapsulated;
 
-import java.util.Arrays;
 import java.util.List;
 
 import io.netty.buffer.ByteBuf;
-import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.EncoderException;
 import io.netty.handler.codec.MessageToMessageEncoder;
 import raknetserver.packet.EncapsulatedPacket;
 import raknetserver.packet.RakNetConstants;
+import raknetserver.packet.Reliability;
+import raknetserver.packet.raknet.RakNetEncapsulatedData;
 import raknetserver.utils.Utils;
 
 public class EncapsulatedPacketSplitter extends MessageToMessageEncoder<EncapsulatedPacket> {
 
 	@Override
 	protected void encode(ChannelHandlerContext ctx, EncapsulatedPacket packet, List<Object> list) throws Exception {
-		int mtu = ctx.channel().attr(RakNetConstants.MTU).get();
-		int splitSize = mtu - 200;
-		if (packet.getDataSize() > (mtu - 100)) {
-			EncapsulatedPacket[] epackets = new EncapsulatedPacket[Utils.getSplitCount(packet.getDataSize(), splitSize)];
+		split(ctx, packet, list);
+	}
+
+	public void split(ChannelHandlerContext ctx, EncapsulatedPacket packet, List<Object> list) {
+		split(ctx.channel().attr(RakNetConstants.MTU).get(), packet, list);
+	}
+
+	//adds packets that fit in a single datagram to the list, packet itself is not released
+	public void split(int mtu, EncapsulatedPacket packet, List<Object> list) {
+		//space left for encapsulated packets in a single datagram
+		int maxSize = mtu - RakNetConstants.UDP_IP_HEADER_SIZE - RakNetEncapsulatedData.HEADER_SIZE;
+		ByteBuf data = packet.getData();
+		int dataSize = packet.getDataSize();
+		if ((EncapsulatedPacket.getHeaderSize(packet.getReliability(), false) + dataSize) > maxSize) {
+			int reliability = Reliability.getById(packet.getReliability()).toReliable().getId();
+			int splitSize = maxSize - EncapsulatedPacket.getHeaderSize(reliability, true);
+			//handshake rejects mtu below minimum, so this happens only if mtu attribute was set to something else
+			if (splitSize <= 0) {
+				throw new EncoderException("Mtu " + mtu + " is too small to split packets");
+			}
+			int splitCount = Utils.getSplitCount(dataSize, splitSize);
 			int splitID = getNextSplitID();
-			//TODO: direct array split
-			ByteBuf buffer = Unpooled.wrappedBuffer(packet.getData());
-			for (int splitIndex = 0; splitIndex < epackets.length; splitIndex++) {
-				epackets[splitIndex] = new EncapsulatedPacket(
-					Utils.readBytes(buffer, buffer.readableBytes() < splitSize ? buffer.readableBytes() : splitSize),
-					getNextMessageIndex(), packet.getOrderChannel(), packet.getOrderIndex(),
-					splitID, epackets.length, splitIndex
-				);
+			for (int splitIndex = 0; splitIndex < splitCount; splitIndex++) {
+				int offset = splitIndex * splitSize;
+				list.add(EncapsulatedPacket.newInstance(
+					data.retainedSlice(data.readerIndex() + offset, Math.min(splitSize, dataSize - offset)),
+					reliability, getNextMessageIndex(), packet.getSequenceIndex(), packet.getOrderChannel(), packet.getOrderIndex(),
+					splitID, splitCount, splitIndex
+				));
 			}
-			list.addAll(Arrays.asList(epackets));
 		} else {
-			list.add(new EncapsulatedPacket(packet.getData(), getNextMessageIndex(), packet.getOrderChannel(), packet.getOrderIndex()));
+			list.add(EncapsulatedPacket.newInstance(
+				data.retain(),
+				packet.getReliability(), packet.isReliable() ? getNextMessageIndex() : 0, packet.getSequenceIndex(), packet.getOrderChannel(), packet.getOrderIndex()
+			));
 		}
 	}
 
 	protected int currentMessageIndex = 0;
 	protected int getNextMessageIndex() {
-		return currentMessageIndex++ % 16777216;
+		int messageIndex = currentMessageIndex;
+		currentMessageIndex = Utils.seqAdd(currentMessageIndex, 1);
+		return messageIndex;
 	}
 
 	protected int currentSplitID = 0;
 	protected int getNextSplitID() {
-		return currentSplitID++ % Short.MAX_VALUE;
+		int splitID = currentSplitID;
+		currentSplitID = (currentSplitID + 1) % Short.MAX_VALUE;
+		return splitID;
 	}
 
 }
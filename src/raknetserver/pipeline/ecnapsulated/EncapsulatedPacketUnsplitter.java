@@ -1,67 +1,237 @@
 package raknetserver.pipeline.ecnapsulated;
 
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
-import io.netty.buffer.Unpooled;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.CompositeByteBuf;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.DecoderException;
 import io.netty.handler.codec.MessageToMessageDecoder;
+import io.netty.util.concurrent.EventExecutor;
 import raknetserver.packet.EncapsulatedPacket;
 import raknetserver.utils.Constants;
-import raknetserver.utils.Utils;
+import raknetserver.utils.TimerWheel.Timer;
 
 public class EncapsulatedPacketUnsplitter extends MessageToMessageDecoder<EncapsulatedPacket> {
 
+	//bytes held by not yet complete packets of all connections
+	private static final AtomicLong globalBufferedBytes = new AtomicLong();
+
+	public static long getGlobalBufferedBytes() {
+		return globalBufferedBytes.get();
+	}
+
 	private final HashMap<Integer, SplittedPacket> notFullPackets = new HashMap<>();
+	private int bufferedBytes = 0;
+	private Timer expireTimer;
 
 	@Override
 	protected void decode(ChannelHandlerContext ctx, EncapsulatedPacket packet, List<Object> list) throws Exception {
+		EncapsulatedPacket fullPacket = unsplit(ctx, packet);
+		if (fullPacket != null) {
+			list.add(fullPacket);
+		}
+	}
+
+	public EncapsulatedPacket unsplit(ChannelHandlerContext ctx, EncapsulatedPacket packet) {
+		return unsplit(ctx.executor(), ctx.alloc(), packet);
+	}
+
+	//returns new reference of the full packet, or null if not all of its splits were received yet
+	//expire timer runs on the passed executor, so it should always be the same one
+	public EncapsulatedPacket unsplit(EventExecutor executor, ByteBufAllocator alloc, EncapsulatedPacket packet) {
 		if (!packet.hasSplit()) {
-			list.add(packet);
-		} else {
-			int splitID = packet.getSplitId();
-			SplittedPacket partial = notFullPackets.get(splitID);
-			if (partial == null) {
-				notFullPackets.put(splitID, new SplittedPacket(packet));
-			} else {
-				partial.appendData(packet);
-				if (partial.isComplete()) {
-					notFullPackets.remove(splitID);
-					list.add(partial.getFullPacket());
-				}
+			return packet.retain();
+		}
+		int splitID = packet.getSplitId();
+		SplittedPacket partial = notFullPackets.get(splitID);
+		if (partial == null) {
+			partial = new SplittedPacket(packet, System.nanoTime());
+			notFullPackets.put(splitID, partial);
+			if (expireTimer == null) {
+				expireTimer = new Timer(executor, this::expireSplittedPackets);
+			}
+			if (!expireTimer.isScheduled()) {
+				expireTimer.schedule(Constants.SPLIT_REASSEMBLY_TIMEOUT, TimeUnit.MILLISECONDS);
+			}
+		}
+		if (partial.hasData(packet) || partial.isDropped()) {
+			return null;
+		}
+		//fragment was already acked, so packet can't be completed without it, and is dropped as a whole
+		if (!reserve(packet.getData().readableBytes())) {
+			unreserve(partial.getSize());
+			partial.drop();
+			return null;
+		}
+		partial.appendData(packet);
+		if (!partial.isComplete()) {
+			return null;
+		}
+		notFullPackets.remove(splitID);
+		unreserve(partial.getSize());
+		return partial.getFullPacket(alloc);
+	}
+
+	//only connection that exceeds its own budget is closed, if server budget is exhausted fragment isn't reserved and false is returned
+	//otherwise connection that happened to send fragment at that moment would be closed instead of the ones that filled the budget
+	protected boolean reserve(int bytes) {
+		if ((bufferedBytes + bytes) > Constants.MAX_SPLIT_BYTES_PER_CONNECTION) {
+			throw new DecoderException("Too many bytes in not complete split packets, max: " + Constants.MAX_SPLIT_BYTES_PER_CONNECTION);
+		}
+		if (globalBufferedBytes.addAndGet(bytes) > Constants.MAX_SPLIT_BYTES_GLOBAL) {
+			globalBufferedBytes.addAndGet(-bytes);
+			return false;
+		}
+		bufferedBytes += bytes;
+		return true;
+	}
+
+	protected void unreserve(int bytes) {
+		bufferedBytes -= bytes;
+		globalBufferedBytes.addAndGet(-bytes);
+	}
+
+	//drops packets that weren't completed in time, and waits for the oldest remaining one
+	protected void expireSplittedPackets() {
+		long timeout = TimeUnit.MILLISECONDS.toNanos(Constants.SPLIT_REASSEMBLY_TIMEOUT);
+		long now = System.nanoTime();
+		long nextExpire = timeout;
+		Iterator<SplittedPacket> iterator = notFullPackets.values().iterator();
+		while (iterator.hasNext()) {
+			SplittedPacket partial = iterator.next();
+			long left = (partial.getCreateTime() + timeout) - now;
+			if (left <= 0) {
+				iterator.remove();
+				unreserve(partial.getSize());
+				partial.release();
+			} else if (left < nextExpire) {
+				nextExpire = left;
 			}
 		}
+		if (!notFullPackets.isEmpty()) {
+			expireTimer.schedule(nextExpire, TimeUnit.NANOSECONDS);
+		}
 	}
 
+	@Override
+	public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+		clear();
+		super.handlerRemoved(ctx);
+	}
+
+	public void clear() {
+		if (expireTimer != null) {
+			expireTimer.cancel();
+		}
+		notFullPackets.values().forEach(SplittedPacket::release);
+		notFullPackets.clear();
+		unreserve(bufferedBytes);
+	}
+
+	//fragments array grows with received split indexes, so first fragment alone can't make us allocate space for all splits
 	private static final class SplittedPacket {
 
+		private static final int INITIAL_CAPACITY = 16;
+
+		private final long createTime;
+		private final int splitCount;
+		private final int reliability;
+		private final int sequenceIndex;
+		private final int orderChannel;
+		private final int orderIndex;
+		private EncapsulatedPacket[] packets;
 		private int receivedSplits = 0;
-		private final EncapsulatedPacket startpacket;
-		private final byte[][] packets;
+		private int size = 0;
+		private boolean dropped = false;
 
-		public SplittedPacket(EncapsulatedPacket startpacket) {
+		public SplittedPacket(EncapsulatedPacket startpacket, long createTime) {
+			if (startpacket.getSplitCount() <= 0) {
+				throw new DecoderException("Invalid split count " + startpacket.getSplitCount());
+			}
 			if (startpacket.getSplitCount() > Constants.MAX_PACKET_SPLITS) {
-				throw new IllegalStateException("Too many splits for single packet, max: " + Constants.MAX_PACKET_SPLITS + ", packet: " + startpacket.getSplitCount());
+				throw new DecoderException("Too many splits for single packet, max: " + Constants.MAX_PACKET_SPLITS + ", packet: " + startpacket.getSplitCount());
 			}
-			this.startpacket = startpacket;
-			this.packets = new byte[startpacket.getSplitCount()][];
-			this.packets[0] = startpacket.getData();
+			if ((startpacket.getSplitIndex() < 0) || (startpacket.getSplitIndex() >= startpacket.getSplitCount())) {
+				throw new DecoderException("Split index " + startpacket.getSplitIndex() + " is out of range, split count: " + startpacket.getSplitCount());
+			}
+			this.createTime = createTime;
+			this.splitCount = startpacket.getSplitCount();
+			this.reliability = startpacket.getReliability();
+			this.sequenceIndex = startpacket.getSequenceIndex();
+			this.orderChannel = startpacket.getOrderChannel();
+			this.orderIndex = startpacket.getOrderIndex();
+			this.packets = new EncapsulatedPacket[Math.min(splitCount, INITIAL_CAPACITY)];
+		}
+
+		public long getCreateTime() {
+			return createTime;
+		}
+
+		public int getSize() {
+			return size;
+		}
+
+		public boolean hasData(EncapsulatedPacket packet) {
+			int splitIndex = packet.getSplitIndex();
+			if ((splitIndex < 0) || (splitIndex >= splitCount)) {
+				throw new DecoderException("Split index " + splitIndex + " is out of range, split count: " + splitCount);
+			}
+			return (splitIndex < packets.length) && (packets[splitIndex] != null);
 		}
 
 		public void appendData(EncapsulatedPacket packet) {
-			if (packets[packet.getSplitIndex()] != null) {
-				return;
+			int splitIndex = packet.getSplitIndex();
+			if (splitIndex >= packets.length) {
+				int newLength = packets.length;
+				while (newLength <= splitIndex) {
+					newLength <<= 1;
+				}
+				EncapsulatedPacket[] newPackets = new EncapsulatedPacket[Math.min(newLength, splitCount)];
+				System.arraycopy(packets, 0, newPackets, 0, packets.length);
+				packets = newPackets;
 			}
 			receivedSplits++;
-			packets[packet.getSplitIndex()] = packet.getData();
+			size += packet.getData().readableBytes();
+			packets[splitIndex] = packet.retain();
+		}
+
+		public boolean isDropped() {
+			return dropped;
+		}
+
+		//fragments are released, but packet stays until it expires, so its remaining fragments are ignored instead of starting it again
+		public void drop() {
+			release();
+			packets = new EncapsulatedPacket[0];
+			size = 0;
+			dropped = true;
 		}
 
 		public boolean isComplete() {
-			return (packets.length - receivedSplits) == 1;
+			return receivedSplits == splitCount;
+		}
+
+		//fragments are joined without copying, composite buffer retains their data and fragments are released
+		public EncapsulatedPacket getFullPacket(ByteBufAllocator alloc) {
+			CompositeByteBuf data = alloc.compositeBuffer(packets.length);
+			for (EncapsulatedPacket packet : packets) {
+				data.addComponent(true, packet.getData().retain());
+				packet.release();
+			}
+			return EncapsulatedPacket.newInstance(data, reliability, 0, sequenceIndex, orderChannel, orderIndex);
 		}
 
-		public EncapsulatedPacket getFullPacket() {
-			return new EncapsulatedPacket(Utils.readBytes(Unpooled.wrappedBuffer(packets)), 0, startpacket.getOrderChannel(), startpacket.getOrderIndex());
+		public void release() {
+			for (EncapsulatedPacket packet : packets) {
+				if (packet != null) {
+					packet.release();
+				}
+			}
 		}
 
 	}
@@ -6,6 +6,7 @@ import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.DecoderException;
 import io.netty.handler.codec.MessageToMessageDecoder;
+import io.netty.util.ReferenceCountUtil;
 import raknetserver.packet.internal.InternalPacket;
 import raknetserver.packet.internal.InternalPacketRegistry;
 import raknetserver.packet.internal.InternalUserData;
@@ -23,10 +24,16 @@ public class InternalPacketDecoder extends MessageToMessageDecoder<ByteBuf> {
 			return;
 		}
 		int packetId = buf.readUnsignedByte();
-		InternalPacket packet = packetId == userPacketId ? new InternalUserData() : InternalPacketRegistry.getPacket(packetId);
-		packet.decode(buf);
-		if (buf.readableBytes() > 0) {
-			throw new DecoderException(buf.readableBytes() + " bytes left after decoding packet " + packet.getClass());
+		InternalPacket packet = packetId == userPacketId ? InternalUserData.newInstance() : InternalPacketRegistry.getPacket(packetId);
+		//pooled packets are returned to recycler if they can't be decoded
+		try {
+			packet.decode(buf);
+			if (buf.readableBytes() > 0) {
+				throw new DecoderException(buf.readableBytes() + " bytes left after decoding packet " + packet.getClass());
+			}
+		} catch (Throwable t) {
+			ReferenceCountUtil.release(packet);
+			throw t;
 		}
 		list.add(packet);
 	}
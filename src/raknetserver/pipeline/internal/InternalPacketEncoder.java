@@ -1,13 +1,16 @@
 package raknetserver.pipeline.internal;
 
+import java.util.List;
+
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
-import io.netty.handler.codec.MessageToByteEncoder;
+import io.netty.handler.codec.MessageToMessageEncoder;
+import raknetserver.RakNetMessage;
 import raknetserver.packet.internal.InternalPacket;
 import raknetserver.packet.internal.InternalPacketRegistry;
 import raknetserver.packet.internal.InternalUserData;
 
-public class InternalPacketEncoder extends MessageToByteEncoder<InternalPacket> {
+public class InternalPacketEncoder extends MessageToMessageEncoder<InternalPacket> {
 
 	private final int userPacketId;
 	public InternalPacketEncoder(int userPacketId) {
@@ -15,10 +18,19 @@ public class InternalPacketEncoder extends MessageToByteEncoder<InternalPacket>
 	}
 
 	@Override
-	protected void encode(ChannelHandlerContext ctx, InternalPacket packet, ByteBuf buf) throws Exception {
-		int packetId = packet instanceof InternalUserData ? userPacketId : InternalPacketRegistry.getId(packet);
-		buf.writeByte(packetId);
-		packet.encode(buf);
+	protected void encode(ChannelHandlerContext ctx, InternalPacket packet, List<Object> list) throws Exception {
+		if (packet instanceof InternalUserData) {
+			//prepend packet id without copying user data
+			InternalUserData userData = (InternalUserData) packet;
+			ByteBuf header = ctx.alloc().buffer(1).writeByte(userPacketId);
+			ByteBuf buf = ctx.alloc().compositeBuffer(2).addComponents(true, header, userData.getData().retain());
+			list.add(new RakNetMessage(buf, userData.getReliability(), userData.getOrderChannel()));
+		} else {
+			ByteBuf buf = ctx.alloc().buffer();
+			buf.writeByte(InternalPacketRegistry.getId(packet));
+			packet.encode(buf);
+			list.add(buf);
+		}
 	}
 
 }
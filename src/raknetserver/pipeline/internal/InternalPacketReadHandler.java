@@ -2,9 +2,9 @@ package raknetserver.pipeline.internal;
 
 import java.net.InetSocketAddress;
 
-import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
+import raknetserver.packet.RakNetConstants;
 import raknetserver.packet.internal.InternalClientHandshake;
 import raknetserver.packet.internal.InternalConnectionRequest;
 import raknetserver.packet.internal.InternalDisconnect;
@@ -18,33 +18,51 @@ import raknetserver.utils.PacketHandlerRegistry;
 //TODO: do a state validation?
 public class InternalPacketReadHandler extends SimpleChannelInboundHandler<InternalPacket> {
 
-	private static final PacketHandlerRegistry<InternalPacketReadHandler, InternalPacket> registry = new PacketHandlerRegistry<>();
+	private static final PacketHandlerRegistry<InternalPacketReadHandler, InternalPacket> registry = new PacketHandlerRegistry<>(InternalPacket::getId);
 	static {
-		registry.register(InternalConnectionRequest.class, (ctx, handler, packet) -> handler.handleConnectionRequest(ctx, packet));
-		registry.register(InternalClientHandshake.class, (ctx, handler, packet) -> handler.handleHandshake(ctx, packet));
-		registry.register(InternalPing.class, (ctx, handler, packet) -> handler.handlePing(ctx, packet));
-		registry.register(InternalUserData.class, (ctx, handler, packet) -> handler.handleUserData(ctx, packet));
-		registry.register(InternalDisconnect.class, (ctx, handler, packet) -> handler.handleDisconnect(ctx, packet));
+		registry.<InternalConnectionRequest>register(RakNetConstants.ID_I_CONNECTION_REQUEST, (ctx, handler, packet) -> handler.handleConnectionRequest(ctx, packet));
+		registry.<InternalClientHandshake>register(RakNetConstants.ID_I_CLIENT_HANDSHAKE, (ctx, handler, packet) -> handler.handleHandshake(ctx, packet));
+		registry.<InternalPing>register(RakNetConstants.ID_I_PING, (ctx, handler, packet) -> handler.handlePing(ctx, packet));
+		registry.<InternalDisconnect>register(RakNetConstants.ID_I_CLIENT_DISCONNECT, (ctx, handler, packet) -> handler.handleDisconnect(ctx, packet));
 	}
 
 	@Override
 	protected void channelRead0(ChannelHandlerContext ctx, InternalPacket packet) throws Exception {
-		registry.handle(ctx, this, packet);
+		//user data id is configured per server, so it doesn't go through registry
+		if (packet instanceof InternalUserData) {
+			handleUserData(ctx, (InternalUserData) packet);
+		} else {
+			registry.handle(ctx, this, packet);
+		}
+	}
+
+	//replies are flushed once per read batch
+	protected boolean flushPending = false;
+
+	@Override
+	public void channelReadComplete(ChannelHandlerContext ctx) throws Exception {
+		if (flushPending) {
+			flushPending = false;
+			ctx.flush();
+		}
+		super.channelReadComplete(ctx);
 	}
 
 	protected void handleConnectionRequest(ChannelHandlerContext ctx, InternalConnectionRequest packet) {
-		ctx.writeAndFlush(new InternalServerHandshake((InetSocketAddress) ctx.channel().remoteAddress(), packet.getTimeStamp()));
+		ctx.write(new InternalServerHandshake((InetSocketAddress) ctx.channel().remoteAddress(), packet.getTimeStamp()));
+		flushPending = true;
 	}
 
 	protected void handleHandshake(ChannelHandlerContext ctx, InternalClientHandshake packet) {
 	}
 
 	protected void handlePing(ChannelHandlerContext ctx, InternalPing packet) {
-		ctx.writeAndFlush(new InternalPong(packet.getKeepAlive()));
+		ctx.write(new InternalPong(packet.getKeepAlive()));
+		flushPending = true;
 	}
 
 	protected void handleUserData(ChannelHandlerContext ctx, InternalUserData packet) {
-		ctx.fireChannelRead(Unpooled.wrappedBuffer(packet.getData()));
+		ctx.fireChannelRead(packet.getData().retain());
 	}
 
 	protected void handleDisconnect(ChannelHandlerContext ctx, InternalDisconnect packet) {
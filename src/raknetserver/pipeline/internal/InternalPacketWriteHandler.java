@@ -5,14 +5,25 @@ import java.util.List;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.MessageToMessageEncoder;
+import raknetserver.RakNetMessage;
+import raknetserver.packet.Reliability;
 import raknetserver.packet.internal.InternalUserData;
-import raknetserver.utils.Utils;
 
-public class InternalPacketWriteHandler extends MessageToMessageEncoder<ByteBuf> {
+public class InternalPacketWriteHandler extends MessageToMessageEncoder<Object> {
 
 	@Override
-	protected void encode(ChannelHandlerContext ctx, ByteBuf buf, List<Object> list) throws Exception {
-		list.add(new InternalUserData(Utils.readBytes(buf)));
+	public boolean acceptOutboundMessage(Object msg) throws Exception {
+		return (msg instanceof ByteBuf) || (msg instanceof RakNetMessage);
+	}
+
+	@Override
+	protected void encode(ChannelHandlerContext ctx, Object msg, List<Object> list) throws Exception {
+		if (msg instanceof RakNetMessage) {
+			RakNetMessage message = (RakNetMessage) msg;
+			list.add(InternalUserData.newInstance(message.content().retain(), message.getReliability(), message.getOrderChannel()));
+		} else {
+			list.add(InternalUserData.newInstance(((ByteBuf) msg).retain(), Reliability.RELIABLE_ORDERED, 0));
+		}
 	}
 
 }
@@ -0,0 +1,58 @@
+package raknetserver.pipeline.raknet;
+
+import java.net.InetSocketAddress;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import io.netty.util.concurrent.FastThreadLocal;
+
+//stateless handshake cookies: mac of client address and current time window, keyed with random secret
+//client that doesn't receive reply 1 on its address can't send valid connection request 2, so spoofed addresses never get a connection
+public class HandshakeCookieGenerator {
+
+	protected static final String ALGORITHM = "HmacSHA256";
+
+	protected final SecretKeySpec secret;
+	protected final long lifetime;
+	protected final FastThreadLocal<Mac> macs = new FastThreadLocal<Mac>() {
+		@Override
+		protected Mac initialValue() throws GeneralSecurityException {
+			Mac mac = Mac.getInstance(ALGORITHM);
+			mac.init(secret);
+			return mac;
+		}
+	};
+
+	public HandshakeCookieGenerator(long lifetime) {
+		byte[] key = new byte[32];
+		new SecureRandom().nextBytes(key);
+		this.secret = new SecretKeySpec(key, ALGORITHM);
+		this.lifetime = lifetime;
+	}
+
+	public int create(InetSocketAddress address) {
+		return create(address, System.currentTimeMillis() / lifetime);
+	}
+
+	//cookie from previous time window is still valid, so cookie lives at least for lifetime
+	public boolean validate(InetSocketAddress address, int cookie) {
+		long window = System.currentTimeMillis() / lifetime;
+		return (cookie == create(address, window)) || (cookie == create(address, window - 1));
+	}
+
+	protected int create(InetSocketAddress address, long window) {
+		Mac mac = macs.get();
+		mac.update(address.getAddress().getAddress());
+		mac.update((byte) (address.getPort() >> 8));
+		mac.update((byte) address.getPort());
+		for (int shift = Long.SIZE - Byte.SIZE; shift >= 0; shift -= Byte.SIZE) {
+			mac.update((byte) (window >> shift));
+		}
+		byte[] result = mac.doFinal();
+		return ((result[0] & 0xFF) << 24) | ((result[1] & 0xFF) << 16) | ((result[2] & 0xFF) << 8) | (result[3] & 0xFF);
+	}
+
+}
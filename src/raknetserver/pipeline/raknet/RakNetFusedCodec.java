@@ -0,0 +1,198 @@
+package raknetserver.pipeline.raknet;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.codec.DecoderException;
+import io.netty.util.ReferenceCountUtil;
+import raknetserver.RakNetMessage;
+import raknetserver.packet.EncapsulatedPacket;
+import raknetserver.packet.RakNetConstants;
+import raknetserver.packet.Reliability;
+import raknetserver.packet.internal.InternalClientHandshake;
+import raknetserver.packet.internal.InternalConnectionRequest;
+import raknetserver.packet.internal.InternalDisconnect;
+import raknetserver.packet.internal.InternalKeepAlive.InternalPing;
+import raknetserver.packet.internal.InternalKeepAlive.InternalPong;
+import raknetserver.packet.internal.InternalPacket;
+import raknetserver.packet.internal.InternalPacketRegistry;
+import raknetserver.packet.internal.InternalServerHandshake;
+import raknetserver.pipeline.ecnapsulated.EncapsulatedPacketInboundOrderer;
+import raknetserver.pipeline.ecnapsulated.EncapsulatedPacketOutboundOrder;
+import raknetserver.pipeline.ecnapsulated.EncapsulatedPacketSplitter;
+import raknetserver.pipeline.ecnapsulated.EncapsulatedPacketUnsplitter;
+import raknetserver.utils.PacketHandlerRegistry;
+
+//replaces reliability, encapsulated and internal handlers with a single one
+//encapsulated packets are unsplit, ordered and stripped of internal header right when datagram is read, and user data is fired directly
+//user data writes are ordered, split and queued to datagrams in the same way, without passing other handlers
+public class RakNetFusedCodec extends RakNetPacketReliabilityHandler {
+
+	private static final PacketHandlerRegistry<RakNetFusedCodec, InternalPacket> registry = new PacketHandlerRegistry<>(InternalPacket::getId);
+	static {
+		registry.<InternalConnectionRequest>register(RakNetConstants.ID_I_CONNECTION_REQUEST, (ctx, codec, packet) -> codec.handleConnectionRequest(ctx, packet));
+		registry.<InternalClientHandshake>register(RakNetConstants.ID_I_CLIENT_HANDSHAKE, (ctx, codec, packet) -> codec.handleHandshake(ctx, packet));
+		registry.<InternalPing>register(RakNetConstants.ID_I_PING, (ctx, codec, packet) -> codec.handlePing(ctx, packet));
+		registry.<InternalDisconnect>register(RakNetConstants.ID_I_CLIENT_DISCONNECT, (ctx, codec, packet) -> codec.handleDisconnect(ctx, packet));
+	}
+
+	protected final int userPacketId;
+
+	//stages are used only as per connection state, they are never added to pipeline
+	protected final EncapsulatedPacketUnsplitter unsplitter = new EncapsulatedPacketUnsplitter();
+	protected final EncapsulatedPacketInboundOrderer orderer = new EncapsulatedPacketInboundOrderer();
+	protected final EncapsulatedPacketSplitter splitter = new EncapsulatedPacketSplitter();
+	protected final EncapsulatedPacketOutboundOrder outboundOrder = new EncapsulatedPacketOutboundOrder();
+
+	//reused for every packet
+	protected final ArrayList<Object> readList = new ArrayList<>();
+	protected final ArrayList<Object> writeList = new ArrayList<>();
+
+	protected ChannelHandlerContext ctx;
+
+	public RakNetFusedCodec(int userPacketId) {
+		this.userPacketId = userPacketId;
+	}
+
+	@Override
+	public void handlerAdded(ChannelHandlerContext ctx) throws Exception {
+		this.ctx = ctx;
+		super.handlerAdded(ctx);
+	}
+
+	@Override
+	public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+		unsplitter.clear();
+		orderer.clear();
+		super.channelInactive(ctx);
+	}
+
+	@Override
+	protected void readEncapsulatedPacket(ChannelHandlerContext ctx, EncapsulatedPacket epacket) {
+		EncapsulatedPacket fullPacket = unsplitter.unsplit(ctx, epacket);
+		if (fullPacket == null) {
+			return;
+		}
+		try {
+			orderer.order(fullPacket, readList);
+		} finally {
+			fullPacket.release();
+		}
+		try {
+			for (int i = 0; i < readList.size(); i++) {
+				readInternalPacket(ctx, (ByteBuf) readList.set(i, null));
+			}
+		} finally {
+			readList.forEach(ReferenceCountUtil::release);
+			readList.clear();
+		}
+	}
+
+	//takes ownership of the data, user data is fired with internal packet id skipped
+	protected void readInternalPacket(ChannelHandlerContext ctx, ByteBuf data) {
+		if (!data.isReadable()) {
+			data.release();
+			return;
+		}
+		int packetId = data.readUnsignedByte();
+		if (packetId == userPacketId) {
+			ctx.fireChannelRead(data);
+			return;
+		}
+		try {
+			InternalPacket packet = InternalPacketRegistry.getPacket(packetId);
+			packet.decode(data);
+			if (data.readableBytes() > 0) {
+				throw new DecoderException(data.readableBytes() + " bytes left after decoding packet " + packet.getClass());
+			}
+			registry.handle(ctx, this, packet);
+		} finally {
+			data.release();
+		}
+	}
+
+	protected void handleConnectionRequest(ChannelHandlerContext ctx, InternalConnectionRequest packet) {
+		writeInternalPacket(ctx, new InternalServerHandshake((InetSocketAddress) ctx.channel().remoteAddress(), packet.getTimeStamp()));
+		flushPending = true;
+	}
+
+	protected void handleHandshake(ChannelHandlerContext ctx, InternalClientHandshake packet) {
+	}
+
+	protected void handlePing(ChannelHandlerContext ctx, InternalPing packet) {
+		writeInternalPacket(ctx, new InternalPong(packet.getKeepAlive()));
+		flushPending = true;
+	}
+
+	protected void handleDisconnect(ChannelHandlerContext ctx, InternalDisconnect packet) {
+		ctx.channel().close();
+	}
+
+	@Override
+	public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+		if (msg instanceof RakNetMessage) {
+			RakNetMessage message = (RakNetMessage) msg;
+			try {
+				writeUserData(ctx, message.content().retain(), message.getReliability(), message.getOrderChannel(), promise);
+			} finally {
+				message.release();
+			}
+		} else if (msg instanceof ByteBuf) {
+			writeUserData(ctx, (ByteBuf) msg, Reliability.RELIABLE_ORDERED, 0, promise);
+		} else {
+			super.write(ctx, msg, promise);
+		}
+	}
+
+	//takes ownership of the data, internal packet id is prepended without copying it
+	protected void writeUserData(ChannelHandlerContext ctx, ByteBuf data, Reliability reliability, int orderChannel, ChannelPromise promise) {
+		ByteBuf header = ctx.alloc().buffer(1).writeByte(userPacketId);
+		writeInternalData(ctx, ctx.alloc().compositeBuffer(2).addComponents(true, header, data), reliability, orderChannel, promise);
+	}
+
+	protected void writeInternalPacket(ChannelHandlerContext ctx, InternalPacket packet) {
+		ByteBuf buf = ctx.alloc().buffer();
+		buf.writeByte(InternalPacketRegistry.getId(packet));
+		packet.encode(buf);
+		writeInternalData(ctx, buf, Reliability.RELIABLE_ORDERED, 0, ctx.voidPromise());
+	}
+
+	//takes ownership of the data that already starts with internal packet id
+	//splits are queued in order, so the last one completes the promise of the whole packet
+	protected void writeInternalData(ChannelHandlerContext ctx, ByteBuf data, Reliability reliability, int orderChannel, ChannelPromise promise) {
+		EncapsulatedPacket packet = outboundOrder.createPacket(data, reliability, orderChannel);
+		try {
+			splitter.split(ctx, packet, writeList);
+		} catch (Throwable t) {
+			writeList.forEach(ReferenceCountUtil::release);
+			writeList.clear();
+			throw t;
+		} finally {
+			packet.release();
+		}
+		int last = writeList.size() - 1;
+		for (int i = 0; i <= last; i++) {
+			writeEncapsulatedPacket(ctx, (EncapsulatedPacket) writeList.get(i), i == last ? promise : ctx.voidPromise());
+		}
+		writeList.clear();
+	}
+
+	//data already starts with user packet id, so the same buffer can be shared by several channels
+	//can be called from any thread, data is written and flushed from channel event loop
+	public void writeAndFlushInternalData(ByteBuf data, Reliability reliability, int orderChannel) {
+		if (!ctx.executor().inEventLoop()) {
+			ctx.executor().execute(() -> writeAndFlushInternalData(data, reliability, orderChannel));
+			return;
+		}
+		if (!ctx.channel().isActive()) {
+			data.release();
+			return;
+		}
+		writeInternalData(ctx, data, reliability, orderChannel, ctx.voidPromise());
+		flush(ctx);
+	}
+
+}
@@ -1,9 +1,14 @@
 package raknetserver.pipeline.raknet;
 
+import java.net.InetSocketAddress;
+
+import io.netty.buffer.ByteBuf;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPipeline;
 import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.util.ReferenceCountUtil;
 import raknetserver.packet.RakNetConstants;
 import raknetserver.packet.raknet.RakNetConnectionFailed;
 import raknetserver.packet.raknet.RakNetConnectionReply1;
@@ -21,19 +26,39 @@ import raknetserver.utils.PacketHandlerRegistry;
 
 public class RakNetPacketConnectionEstablishHandler extends SimpleChannelInboundHandler<RakNetPacket> {
 
-	private static final PacketHandlerRegistry<RakNetPacketConnectionEstablishHandler, RakNetPacket> registry = new PacketHandlerRegistry<>();
+	private static final PacketHandlerRegistry<RakNetPacketConnectionEstablishHandler, RakNetPacket> registry = new PacketHandlerRegistry<>(RakNetPacket::getId);
 	static {
-		registry.register(RakNetConnectionRequest1.class, (ctx, handler, packet) -> handler.handleConnectionRequest1(ctx, packet));
-		registry.register(RakNetConnectionRequest2.class, (ctx, handler, packet) -> handler.handleConnectionRequest2(ctx, packet));
-		registry.register(RakNetUnconnectedPing.class, (ctx, handler, packet) -> handler.handlePing(ctx, packet));
-		registry.register(RakNetEncapsulatedData.class, (ctx, handler, packet) -> handler.fireNext(ctx, packet));
-		registry.register(RakNetACK.class, (ctx, handler, packet) -> handler.fireNext(ctx, packet));
-		registry.register(RakNetNACK.class, (ctx, handler, packet) -> handler.fireNext(ctx, packet));
+		registry.<RakNetConnectionRequest1>register(RakNetConstants.ID_RN_OPEN_CONNECTION_REQUEST_1, (ctx, handler, packet) -> handler.handleConnectionRequest1(ctx, packet));
+		registry.<RakNetConnectionRequest2>register(RakNetConstants.ID_RN_OPEN_CONNECTION_REQUEST_2, (ctx, handler, packet) -> handler.handleConnectionRequest2(ctx, packet));
+		registry.<RakNetUnconnectedPing>register(RakNetConstants.ID_RN_UNCONNECTED_PING, (ctx, handler, packet) -> handler.handlePing(ctx, packet));
+		registry.<RakNetEncapsulatedData>register(RakNetConstants.ID_RN_ENCAPSULATED_DATA, (ctx, handler, packet) -> handler.fireNext(ctx, packet));
+		registry.<RakNetACK>register(RakNetConstants.ID_RN_ACK, (ctx, handler, packet) -> handler.fireNext(ctx, packet));
+		registry.<RakNetNACK>register(RakNetConstants.ID_RN_NACK, (ctx, handler, packet) -> handler.fireNext(ctx, packet));
 	}
 
 	private final PingHandler pinghandler;
+	private final UnconnectedPingResponder pingresponder;
+	private final HandshakeCookieGenerator cookies;
+	private final ConnectedPipelineInitializer connectedinit;
 	public RakNetPacketConnectionEstablishHandler(PingHandler pinghandler) {
+		this(pinghandler, null, null, null);
+	}
+
+	public RakNetPacketConnectionEstablishHandler(PingHandler pinghandler, UnconnectedPingResponder pingresponder) {
+		this(pinghandler, pingresponder, null, null);
+	}
+
+	public RakNetPacketConnectionEstablishHandler(PingHandler pinghandler, UnconnectedPingResponder pingresponder, ConnectedPipelineInitializer connectedinit) {
+		this(pinghandler, pingresponder, null, connectedinit);
+	}
+
+	//connected pipeline initializer adds handlers that are needed only after connection is established, right after this handler
+	//if cookie generator is set, connection request 2 is accepted only with cookie that was sent in reply 1
+	public RakNetPacketConnectionEstablishHandler(PingHandler pinghandler, UnconnectedPingResponder pingresponder, HandshakeCookieGenerator cookies, ConnectedPipelineInitializer connectedinit) {
 		this.pinghandler = pinghandler;
+		this.pingresponder = pingresponder;
+		this.cookies = cookies;
+		this.connectedinit = connectedinit;
 	}
 
 	private State state = State.NEW;
@@ -43,6 +68,23 @@ public class RakNetPacketConnectionEstablishHandler extends SimpleChannelInbound
 		registry.handle(ctx, this, packet);
 	}
 
+	//replies written while reading are flushed once per read batch
+	protected boolean flushPending = false;
+
+	protected void writeReply(ChannelHandlerContext ctx, Object reply, ChannelFutureListener listener) {
+		ctx.write(reply).addListener(listener);
+		flushPending = true;
+	}
+
+	@Override
+	public void channelReadComplete(ChannelHandlerContext ctx) throws Exception {
+		if (flushPending) {
+			flushPending = false;
+			ctx.flush();
+		}
+		super.channelReadComplete(ctx);
+	}
+
 	//if the exception occured before the connection was established - kick the client so it no longer spam us
 	@Override
 	public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
@@ -54,10 +96,18 @@ public class RakNetPacketConnectionEstablishHandler extends SimpleChannelInbound
 	}
 
 	protected void handleConnectionRequest1(ChannelHandlerContext ctx, RakNetConnectionRequest1 connectionRequest1) {
+		//client sends reply 1 mtu back in request 2, so too small mtu would be rejected there anyway
+		if (connectionRequest1.getMtu() < RakNetConstants.MIN_MTU) {
+			ctx.channel().close();
+			return;
+		}
 		if (connectionRequest1.getRakNetProtocolVersion() == RakNetInvalidVersion.VALID_VERSION) {
-			ctx.writeAndFlush(new RakNetConnectionReply1(connectionRequest1.getMtu())).addListener(ChannelFutureListener.FIRE_EXCEPTION_ON_FAILURE);
+			RakNetConnectionReply1 reply = cookies != null ?
+				new RakNetConnectionReply1(connectionRequest1.getMtu(), cookies.create((InetSocketAddress) ctx.channel().remoteAddress())) :
+				new RakNetConnectionReply1(connectionRequest1.getMtu());
+			writeReply(ctx, reply, ChannelFutureListener.FIRE_EXCEPTION_ON_FAILURE);
 		} else {
-			ctx.writeAndFlush(new RakNetInvalidVersion()).addListener(ChannelFutureListener.CLOSE);
+			writeReply(ctx, new RakNetInvalidVersion(), ChannelFutureListener.CLOSE);
 		}
 	}
 
@@ -66,22 +116,43 @@ public class RakNetPacketConnectionEstablishHandler extends SimpleChannelInbound
 	protected void handleConnectionRequest2(ChannelHandlerContext ctx, RakNetConnectionRequest2 connectionRequest2) {
 		long nguid = connectionRequest2.getGUID();
 		if (state == State.NEW) {
+			//mtu that is too small to fit ack entries and packet splits would stall the connection, and there is no reason for a client to use it
+			if (connectionRequest2.getMtu() < RakNetConstants.MIN_MTU) {
+				ctx.channel().close();
+				return;
+			}
+			//no reply, so sender of spoofed packet can't be used to amplify traffic
+			if ((cookies != null) && (!connectionRequest2.hasCookie() || !cookies.validate((InetSocketAddress) ctx.channel().remoteAddress(), connectionRequest2.getCookie()))) {
+				ctx.channel().close();
+				return;
+			}
 			state = State.CONNECTED;
 			guid = nguid;
 			ctx.channel().attr(RakNetConstants.MTU).set(connectionRequest2.getMtu());
-			ctx.writeAndFlush(new RakNetConnectionReply2(connectionRequest2.getMtu())).addListener(ChannelFutureListener.FIRE_EXCEPTION_ON_FAILURE);
+			if (connectedinit != null) {
+				connectedinit.init(ctx.pipeline(), ctx.name());
+			}
+			writeReply(ctx, new RakNetConnectionReply2(connectionRequest2.getMtu()), ChannelFutureListener.FIRE_EXCEPTION_ON_FAILURE);
 		} else {
 			//if guid matches then it means that reply2 packet didn't arrive to the clients
 			//otherwise it means that it is actually a new client connecting using already taken ip+port
 			if (guid == nguid) {
-				ctx.writeAndFlush(new RakNetConnectionReply2(ctx.channel().attr(RakNetConstants.MTU).get())).addListener(ChannelFutureListener.FIRE_EXCEPTION_ON_FAILURE);
+				writeReply(ctx, new RakNetConnectionReply2(ctx.channel().attr(RakNetConstants.MTU).get()), ChannelFutureListener.FIRE_EXCEPTION_ON_FAILURE);
 			} else {
-				ctx.writeAndFlush(new RakNetConnectionFailed()).addListener(ChannelFutureListener.CLOSE);
+				writeReply(ctx, new RakNetConnectionFailed(), ChannelFutureListener.CLOSE);
 			}
 		}
 	}
 
 	protected void handlePing(ChannelHandlerContext ctx, RakNetUnconnectedPing unconnectedPing) {
+		if (pingresponder != null) {
+			ByteBuf pong = pingresponder.createPong(ctx.alloc(), unconnectedPing.getClientTime());
+			if (pong != null) {
+				writeReply(ctx, pong, ChannelFutureListener.CLOSE);
+				return;
+			}
+		}
+		//ping handler may run the task later or on other thread, so the pong is flushed right away
 		pinghandler.executeHandler(() -> {
 			ctx.writeAndFlush(new RakNetUnconnectedPong(unconnectedPing.getClientTime(), pinghandler.getServerInfo(ctx.channel()))).addListener(ChannelFutureListener.CLOSE);
 		});
@@ -91,19 +162,32 @@ public class RakNetPacketConnectionEstablishHandler extends SimpleChannelInbound
 		if (state != State.CONNECTED) {
 			throw new IllegalStateException("Can't handle packet " + packet.getClass() + ", connection is not established yet");
 		}
-		ctx.fireChannelRead(packet);
+		//packet is released after channelRead0 returns, so retain it for next handlers
+		ctx.fireChannelRead(ReferenceCountUtil.retain(packet));
 	}
 
 	protected static enum State {
 		NEW, CONNECTED
 	}
 
+	public static interface ConnectedPipelineInitializer {
+
+		public void init(ChannelPipeline pipeline, String baseName);
+
+	}
+
 	public static interface PingHandler {
 
 		public void executeHandler(Runnable runnable);
 
 		public String getServerInfo(Channel channel);
 
+		//server info that is the same for all clients, it is requested once per cache interval and pings are answered with it without calling getServerInfo
+		//null disables the cache, session server doesn't create channels for clients, so it answers pings only if this is implemented
+		public default String getCachedServerInfo() {
+			return null;
+		}
+
 	}
 
 }
@@ -6,6 +6,7 @@ import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.DecoderException;
 import io.netty.handler.codec.MessageToMessageDecoder;
+import io.netty.util.ReferenceCountUtil;
 import raknetserver.packet.raknet.RakNetPacket;
 import raknetserver.packet.raknet.RakNetPacketRegistry;
 
@@ -17,9 +18,15 @@ public class RakNetPacketDecoder extends MessageToMessageDecoder<ByteBuf> {
 			return;
 		}
 		RakNetPacket packet = RakNetPacketRegistry.getPacket(buffer.readUnsignedByte());
-		packet.decode(buffer);
-		if (buffer.readableBytes() > 0) {
-			throw new DecoderException(buffer.readableBytes() + " bytes left after decoding packet " + packet.getClass());
+		//pooled packets are returned to recycler if they can't be decoded
+		try {
+			packet.decode(buffer);
+			if (buffer.readableBytes() > 0) {
+				throw new DecoderException(buffer.readableBytes() + " bytes left after decoding packet " + packet.getClass());
+			}
+		} catch (Throwable t) {
+			ReferenceCountUtil.release(packet);
+			throw t;
 		}
 		list.add(packet);
 	}
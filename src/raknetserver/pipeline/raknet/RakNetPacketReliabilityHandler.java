@@ -1,146 +1,163 @@
 package raknetserver.pipeline.raknet;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.List;
-import java.util.Map.Entry;
-import java.util.concurrent.TimeUnit;
+import java.nio.channels.ClosedChannelException;
 
+import io.netty.channel.ChannelDuplexHandler;
 import io.netty.channel.ChannelHandlerContext;
-import io.netty.handler.codec.DecoderException;
-import io.netty.handler.codec.MessageToMessageCodec;
-import io.netty.util.concurrent.ScheduledFuture;
+import io.netty.channel.ChannelPromise;
 import raknetserver.packet.EncapsulatedPacket;
+import raknetserver.packet.RakNetConstants;
 import raknetserver.packet.raknet.RakNetEncapsulatedData;
 import raknetserver.packet.raknet.RakNetPacket;
-import raknetserver.packet.raknet.RakNetReliability.REntry;
 import raknetserver.packet.raknet.RakNetReliability.RakNetACK;
 import raknetserver.packet.raknet.RakNetReliability.RakNetNACK;
+import raknetserver.pipeline.raknet.congestion.CongestionControl;
 import raknetserver.utils.Constants;
 
-//TODO: figure out if seq numbers can wrap
-public class RakNetPacketReliabilityHandler extends MessageToMessageCodec<RakNetPacket, EncapsulatedPacket> {
+public class RakNetPacketReliabilityHandler extends ChannelDuplexHandler {
 
-	protected int lastReceivedACK = -1;
-	protected final HashMap<Integer, RakNetEncapsulatedData> sentPackets = new HashMap<>();
-
-	protected ScheduledFuture<?> task;
+	protected ReliabilityEngine engine;
 
 	@Override
-	public void channelActive(final ChannelHandlerContext ctx) throws Exception {
-		task = ctx.channel().eventLoop().scheduleAtFixedRate(new Runnable() {
-			@Override
-			public void run() {
-				//resend packets that weren't confirmed as received on the other side
-				//only packets with seq id less than latest received ack are sent
-				ArrayList<RakNetEncapsulatedData> toResend = new ArrayList<>();
-				Iterator<Entry<Integer, RakNetEncapsulatedData>> iterator = sentPackets.entrySet().iterator();
-				while (iterator.hasNext()) {
-					Entry<Integer, RakNetEncapsulatedData> entry = iterator.next();
-					RakNetEncapsulatedData packet = entry.getValue();
-					if (packet.getSeqId() < lastReceivedACK) {
-						iterator.remove();
-						toResend.add(packet);
-					}
-				}
-				for (RakNetEncapsulatedData packet : toResend) {
-					sendRakNetPacket(ctx, packet);
-				}
-			}
-		}, Constants.PACKET_RESEND_INTERVAL, Constants.PACKET_RESEND_INTERVAL, TimeUnit.MILLISECONDS);
-		super.channelActive(ctx);
+	public void handlerAdded(ChannelHandlerContext ctx) throws Exception {
+		engine = new ChannelReliabilityEngine(ctx);
+		super.handlerAdded(ctx);
 	}
 
 	@Override
 	public void channelInactive(ChannelHandlerContext ctx) throws Exception {
-		task.cancel(false);
+		engine.release(new ClosedChannelException());
 		super.channelInactive(ctx);
 	}
 
-	protected int lastReceivedSeqId = -1;
-
 	@Override
-	protected void decode(ChannelHandlerContext ctx, RakNetPacket packet, List<Object> list) throws Exception {
-		if (packet instanceof RakNetEncapsulatedData) {
-			RakNetEncapsulatedData edata = (RakNetEncapsulatedData) packet;
-			//check for missing packets
-			int packetSeqId = edata.getSeqId();
-			int prevSeqId = lastReceivedSeqId;
-			lastReceivedSeqId = packetSeqId;
-			//if id is after last received, which means that we don't have any missing packets, send ACK for it
-			if ((packetSeqId - prevSeqId) == 1) {
-				ctx.writeAndFlush(new RakNetACK(packetSeqId));
-			} else
-			//id is not the after last received, which means we have missing packets, send NACK for missing ones
-			if ((packetSeqId - prevSeqId) > 1) {
-				ctx.writeAndFlush(new RakNetNACK(prevSeqId + 1, packetSeqId - 1));
+	public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+		if (msg instanceof RakNetEncapsulatedData) {
+			RakNetEncapsulatedData edata = (RakNetEncapsulatedData) msg;
+			try {
+				engine.read(edata);
+			} finally {
+				edata.release();
 			}
-			//id is before last received, which means that it is a duplicate packet, ignore it
-			else {
-				return;
+		} else if (msg instanceof RakNetACK) {
+			RakNetACK ack = (RakNetACK) msg;
+			try {
+				flushPending |= engine.read(ack);
+			} finally {
+				ack.release();
 			}
-			//add encapsulated packet
-			list.addAll(edata.getPackets());
-		} else if (packet instanceof RakNetACK) {
-			for (REntry entry : ((RakNetACK) packet).getEntries()) {
-				confirmRakNetPackets(entry.idstart, entry.idfinish);
-			}
-		} else if (packet instanceof RakNetNACK) {
-			for (REntry entry : ((RakNetNACK) packet).getEntries()) {
-				resendRakNetPackets(ctx, entry.idstart, entry.idfinish);
+		} else if (msg instanceof RakNetNACK) {
+			RakNetNACK nack = (RakNetNACK) msg;
+			try {
+				flushPending |= engine.read(nack);
+			} finally {
+				nack.release();
 			}
+		} else {
+			ctx.fireChannelRead(msg);
 		}
 	}
 
+	//datagrams sent in response to acks are flushed once per read batch
+	protected boolean flushPending = false;
+
 	@Override
-	protected void encode(ChannelHandlerContext ctx, EncapsulatedPacket packet, List<Object> list) throws Exception {
-		RakNetEncapsulatedData rpacket = new RakNetEncapsulatedData(packet);
-		initRakNetPacket(rpacket);
-		list.add(rpacket);
+	public void channelReadComplete(ChannelHandlerContext ctx) throws Exception {
+		if (flushPending) {
+			flushPending = false;
+			ctx.flush();
+		}
+		super.channelReadComplete(ctx);
 	}
 
-	private void confirmRakNetPackets(int idstart, int idfinish) {
-		if ((idfinish - idstart) > Constants.MAX_PACKET_LOSS) {
-			throw new DecoderException("Too big packet loss (ack confirm range)");
-		}
-		for (int id = idstart; id <= idfinish; id++) {
-			sentPackets.remove(id);
-		}
-		lastReceivedACK = idfinish;
+	//packet is retained when fired, because edata releases it after read
+	protected void readEncapsulatedPacket(ChannelHandlerContext ctx, EncapsulatedPacket epacket) {
+		ctx.fireChannelRead(epacket.retain());
 	}
 
-	private void resendRakNetPackets(ChannelHandlerContext ctx, int idstart, int idfinish) {
-		if ((idfinish - idstart) > Constants.MAX_PACKET_LOSS) {
-			throw new DecoderException("Too big packet loss (nack resend range)");
-		}
-		for (int id = idstart; id <= idfinish; id++) {
-			RakNetEncapsulatedData packet = sentPackets.remove(id);
-			if (packet != null) {
-				sendRakNetPacket(ctx, packet);
-			}
+	@Override
+	public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+		if (msg instanceof EncapsulatedPacket) {
+			writeEncapsulatedPacket(ctx, (EncapsulatedPacket) msg, promise);
+		} else {
+			ctx.write(msg, promise);
 		}
 	}
 
-	protected void initRakNetPacket(RakNetEncapsulatedData rpacket) {
-		rpacket.setSeqId(getNextRakSeqID());
-		if (sentPackets.size() > Constants.MAX_PACKET_LOSS) {
-			throw new DecoderException("Too big packet loss (unconfirmed sent packets)");
-		}
-		sentPackets.put(rpacket.getSeqId(), rpacket);
+	protected void writeEncapsulatedPacket(ChannelHandlerContext ctx, EncapsulatedPacket packet, ChannelPromise promise) {
+		engine.write(packet, promise);
+	}
+
+	@Override
+	public void flush(ChannelHandlerContext ctx) {
+		engine.flush();
+		ctx.flush();
+	}
+
+	public CongestionControl getCongestionControl() {
+		return engine.getCongestionControl();
+	}
+
+	protected CongestionControl createCongestionControl(int mss) {
+		return CongestionControl.create(Constants.CONGESTION_CONTROL, mss);
 	}
 
-	protected void sendRakNetPacket(ChannelHandlerContext ctx, RakNetEncapsulatedData rpacket) {
-		initRakNetPacket(rpacket);
-		ctx.writeAndFlush(rpacket);
+	public int getBytesInFlight() {
+		return engine.getBytesInFlight();
 	}
 
-	protected int currentRakSeqID = 0;
-	protected int getNextRakSeqID() {
-		if (currentRakSeqID >= 16777216) {
-			throw new IllegalStateException("Rak seq id reached max");
+	public RetransmissionTimeout getRetransmissionTimeout() {
+		return engine.getRetransmissionTimeout();
+	}
+
+	//datagrams and acks are written to the next handler, encoder releases them after write
+	protected class ChannelReliabilityEngine extends ReliabilityEngine {
+
+		protected final ChannelHandlerContext ctx;
+
+		public ChannelReliabilityEngine(ChannelHandlerContext ctx) {
+			super(ctx.executor());
+			this.ctx = ctx;
+		}
+
+		@Override
+		protected int getMtu() {
+			return ctx.channel().attr(RakNetConstants.MTU).get();
+		}
+
+		@Override
+		protected void writePacket(RakNetPacket packet, ChannelPromise promise) {
+			ctx.write(packet, promise);
+		}
+
+		@Override
+		protected ChannelPromise voidPromise() {
+			return ctx.voidPromise();
 		}
-		return currentRakSeqID++;
+
+		@Override
+		protected void flushPackets() {
+			ctx.flush();
+		}
+
+		@Override
+		protected void readEncapsulatedPacket(EncapsulatedPacket packet) {
+			RakNetPacketReliabilityHandler.this.readEncapsulatedPacket(ctx, packet);
+		}
+
+		@Override
+		protected void close(Throwable cause) {
+			ctx.fireExceptionCaught(cause);
+			ctx.channel().close();
+		}
+
+		@Override
+		protected CongestionControl createCongestionControl(int mss) {
+			CongestionControl congestionControl = RakNetPacketReliabilityHandler.this.createCongestionControl(mss);
+			ctx.channel().attr(RakNetConstants.CONGESTION_CONTROL).set(congestionControl);
+			return congestionControl;
+		}
+
 	}
 
 }
@@ -0,0 +1,81 @@
+package raknetserver.pipeline.raknet;
+
+import java.util.concurrent.TimeUnit;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.timeout.ReadTimeoutException;
+import raknetserver.utils.TimerWheel.Timer;
+
+//closes channel if nothing was read in timeout
+//read only updates last read time, timer is checked once per timeout using event loop timer wheel
+public class ReadTimeoutHandler extends ChannelInboundHandlerAdapter {
+
+	protected final long timeout;
+	protected long lastReadTime;
+	protected Timer timer;
+	protected boolean closed = false;
+
+	public ReadTimeoutHandler(int timeoutSeconds) {
+		this.timeout = TimeUnit.SECONDS.toNanos(timeoutSeconds);
+	}
+
+	@Override
+	public void handlerAdded(ChannelHandlerContext ctx) throws Exception {
+		if (ctx.channel().isActive() && ctx.channel().isRegistered()) {
+			start(ctx);
+		}
+		super.handlerAdded(ctx);
+	}
+
+	@Override
+	public void channelActive(ChannelHandlerContext ctx) throws Exception {
+		start(ctx);
+		super.channelActive(ctx);
+	}
+
+	@Override
+	public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+		lastReadTime = System.nanoTime();
+		super.channelRead(ctx, msg);
+	}
+
+	@Override
+	public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+		stop();
+		super.channelInactive(ctx);
+	}
+
+	@Override
+	public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+		stop();
+		super.handlerRemoved(ctx);
+	}
+
+	protected void start(ChannelHandlerContext ctx) {
+		if (timer != null) {
+			return;
+		}
+		lastReadTime = System.nanoTime();
+		timer = new Timer(ctx.executor(), () -> checkTimeout(ctx));
+		timer.schedule(timeout, TimeUnit.NANOSECONDS);
+	}
+
+	protected void stop() {
+		if (timer != null) {
+			timer.cancel();
+		}
+	}
+
+	protected void checkTimeout(ChannelHandlerContext ctx) {
+		long left = timeout - (System.nanoTime() - lastReadTime);
+		if (left > 0) {
+			timer.schedule(left, TimeUnit.NANOSECONDS);
+		} else if (!closed) {
+			closed = true;
+			ctx.fireExceptionCaught(ReadTimeoutException.INSTANCE);
+			ctx.close();
+		}
+	}
+
+}
@@ -0,0 +1,475 @@
+package raknetserver.pipeline.raknet;
+
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.codec.DecoderException;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.PromiseNotifier;
+import raknetserver.packet.EncapsulatedPacket;
+import raknetserver.packet.RakNetConstants;
+import raknetserver.packet.raknet.RakNetEncapsulatedData;
+import raknetserver.packet.raknet.RakNetPacket;
+import raknetserver.packet.raknet.RakNetReliability;
+import raknetserver.packet.raknet.RakNetReliability.RakNetACK;
+import raknetserver.packet.raknet.RakNetReliability.RakNetNACK;
+import raknetserver.pipeline.raknet.congestion.CongestionControl;
+import raknetserver.utils.Constants;
+import raknetserver.utils.IntRangeQueue;
+import raknetserver.utils.ReceivedIndexWindow;
+import raknetserver.utils.SequenceRingBuffer;
+import raknetserver.utils.SequenceWindow;
+import raknetserver.utils.TimerWheel.Timer;
+import raknetserver.utils.Utils;
+
+//datagram reliability of a single connection, used both by reliability handler and by channel-less session
+//received datagrams are acked and deduplicated, encapsulated packets are packed into datagrams that are sent within congestion window and resent until confirmed
+//engine is used only from its event loop, ack, flush, pacing and resend deadlines are served by a single reusable timer
+public abstract class ReliabilityEngine {
+
+	protected static final long ACK_INTERVAL = TimeUnit.MILLISECONDS.toNanos(Constants.ACK_INTERVAL);
+	protected static final long FLUSH_INTERVAL = TimeUnit.MILLISECONDS.toNanos(Constants.PACKET_FLUSH_INTERVAL);
+
+	protected final Timer timer;
+	protected long timerDeadline;
+
+	public ReliabilityEngine(EventExecutor executor) {
+		this.timer = new Timer(executor, this::onTimer);
+	}
+
+	//mtu is requested only once packets are read or written, so it can be set after engine is created
+	protected abstract int getMtu();
+
+	//takes ownership of the packet
+	protected abstract void writePacket(RakNetPacket packet, ChannelPromise promise);
+
+	protected abstract ChannelPromise voidPromise();
+
+	//called once packets were written outside of read or write calls
+	protected abstract void flushPackets();
+
+	//packet is not retained, it is released after the call together with datagram
+	protected abstract void readEncapsulatedPacket(EncapsulatedPacket packet);
+
+	//called when connection can't be served anymore, engine is released after that or when connection is closed
+	protected abstract void close(Throwable cause);
+
+	protected CongestionControl createCongestionControl(int mss) {
+		return CongestionControl.create(Constants.CONGESTION_CONTROL, mss);
+	}
+
+	public int getMaxDatagramSize() {
+		return getMtu() - RakNetConstants.UDP_IP_HEADER_SIZE;
+	}
+
+	public CongestionControl getCongestionControl() {
+		if (congestionControl == null) {
+			congestionControl = createCongestionControl(getMaxDatagramSize());
+		}
+		return congestionControl;
+	}
+
+	public RetransmissionTimeout getRetransmissionTimeout() {
+		return rto;
+	}
+
+	public int getBytesInFlight() {
+		return bytesInFlight;
+	}
+
+	protected boolean released = false;
+
+	//releases all packets that are not sent or confirmed yet, packets written after that are released right away
+	public void release(Throwable cause) {
+		released = true;
+		timer.cancel();
+		ackPending = false;
+		resendPending = false;
+		pacingPending = false;
+		if (queuedPacket != null) {
+			queuedPacket.release();
+			queuedPacket = null;
+			queuedPromises.forEach(promise -> promise.tryFailure(cause));
+			queuedPromises.clear();
+		}
+		QueuedDatagram datagram = null;
+		while ((datagram = sendQueue.poll()) != null) {
+			datagram.packet.release();
+			datagram.promise.tryFailure(cause);
+		}
+		sendQueueBytes = 0;
+		sentPackets.clear(RakNetEncapsulatedData::release);
+		bytesInFlight = 0;
+	}
+
+	protected void wakeAt(long deadline) {
+		if (timer.isScheduled() && ((timerDeadline - deadline) <= 0)) {
+			return;
+		}
+		timerDeadline = deadline;
+		timer.schedule(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+	}
+
+	protected void onTimer() {
+		long now = System.nanoTime();
+		if (ackPending && ((ackDeadline - now) <= 0)) {
+			sendAcks();
+		}
+		if ((queuedPacket != null) && ((flushDeadline - now) <= 0)) {
+			sendQueuedPacket();
+		}
+		if (resendPending && ((resendDeadline - now) <= 0)) {
+			resendTimedOutPackets(now);
+		}
+		if (pacingPending && ((pacingDeadline - now) <= 0)) {
+			pacingPending = false;
+			sendQueuedDatagrams();
+		}
+		if (ackPending) {
+			wakeAt(ackDeadline);
+		}
+		if (queuedPacket != null) {
+			wakeAt(flushDeadline);
+		}
+		if (resendPending) {
+			wakeAt(resendDeadline);
+		}
+		if (pacingPending) {
+			wakeAt(pacingDeadline);
+		}
+		flushPackets();
+	}
+
+	//received datagram seq ids, reordered datagrams are accepted once, duplicates are dropped
+	//lost datagrams are never received later, their packets are resent with new seq ids, so window follows the highest seq id
+	protected final SequenceWindow receivedSeqIds = new SequenceWindow(Constants.RECEIVE_WINDOW_SIZE);
+	//reliable packets are resent until confirmed, so window starts at the lowest missing message index and never drops one that is still missing
+	protected final ReceivedIndexWindow receivedMessageIndexes = new ReceivedIndexWindow(64);
+
+	//datagram is not released
+	public void read(RakNetEncapsulatedData edata) {
+		int packetSeqId = edata.getSeqId();
+		//duplicate packet, ignore it
+		if (!receivedSeqIds.add(packetSeqId)) {
+			return;
+		}
+		//missing packets are found when acks are sent, so packets that were just reordered are not reported as missing
+		ackQueue.add(packetSeqId);
+		if (!ackPending) {
+			ackPending = true;
+			ackDeadline = System.nanoTime() + ACK_INTERVAL;
+			wakeAt(ackDeadline);
+		}
+		//reliable packets can arrive multiple times in different datagrams if ack was lost, read them only once
+		for (EncapsulatedPacket epacket : edata.getPackets()) {
+			if (epacket.isReliable()) {
+				int messageIndex = epacket.getMessageIndex();
+				if (receivedMessageIndexes.getOffset(messageIndex) > Constants.MAX_PACKET_LOSS) {
+					throw new DecoderException("Too big packet loss (missed reliable packets)");
+				}
+				if (!receivedMessageIndexes.add(messageIndex)) {
+					continue;
+				}
+			}
+			readEncapsulatedPacket(epacket);
+		}
+	}
+
+	//ack is not released, returns true if confirmed packets freed space for queued datagrams and they were written
+	public boolean read(RakNetACK ack) {
+		for (int i = 0; i < ack.getEntryCount(); i++) {
+			confirmRakNetPackets(ack.getIdStart(i), ack.getIdFinish(i));
+		}
+		return sendQueuedDatagrams();
+	}
+
+	//nack is not released, returns true if lost packets were written again
+	public boolean read(RakNetNACK nack) {
+		boolean lost = false;
+		for (int i = 0; i < nack.getEntryCount(); i++) {
+			lost |= resendRakNetPackets(nack.getIdStart(i), nack.getIdFinish(i));
+		}
+		if (lost) {
+			getCongestionControl().onLoss(false, System.nanoTime());
+		}
+		return lost;
+	}
+
+	//received seq ids are collected and confirmed (or reported as missing) in batches after ack interval
+	protected final IntRangeQueue ackQueue = new IntRangeQueue();
+	protected final IntRangeQueue nackQueue = new IntRangeQueue();
+	protected int nackCheckedSeqId = -1;
+	protected boolean ackPending;
+	protected long ackDeadline;
+
+	protected void sendAcks() {
+		ackPending = false;
+		//seq ids that are still missing up to highest received one are reported once
+		int highestSeqId = receivedSeqIds.getHighest();
+		int checkCount = Math.min(Utils.seqDiff(highestSeqId, nackCheckedSeqId) - 1, receivedSeqIds.getSize());
+		if (checkCount > 0) {
+			for (int seqId = Utils.seqAdd(highestSeqId, -checkCount); seqId != highestSeqId; seqId = Utils.seqAdd(seqId, 1)) {
+				if (!receivedSeqIds.contains(seqId)) {
+					nackQueue.add(seqId);
+				}
+			}
+		}
+		nackCheckedSeqId = highestSeqId;
+		int maxEntries = RakNetReliability.getMaxEntries(getMaxDatagramSize());
+		writeReliability(ackQueue, maxEntries, RakNetACK::newInstance);
+		writeReliability(nackQueue, maxEntries, RakNetNACK::newInstance);
+	}
+
+	protected void writeReliability(IntRangeQueue queue, int maxEntries, Supplier<? extends RakNetReliability> constr) {
+		//handshake rejects small mtu, but at least one entry per packet is always written, otherwise queue would never be drained
+		maxEntries = Math.max(maxEntries, 1);
+		for (int offset = 0; offset < queue.size(); offset += maxEntries) {
+			RakNetReliability packet = constr.get();
+			int count = Math.min(maxEntries, queue.size() - offset);
+			for (int i = 0; i < count; i++) {
+				packet.addEntry(queue.getStart(offset + i), queue.getFinish(offset + i));
+			}
+			writePacket(packet, voidPromise());
+		}
+		queue.clear();
+	}
+
+	//encapsulated packets are queued and packed together into as few datagrams as possible
+	//datagram is sent once it can't fit next packet, on flush, or after flush interval if no flush happened
+	protected RakNetEncapsulatedData queuedPacket;
+	protected int queuedPacketSize;
+	protected long flushDeadline;
+	protected final ArrayList<ChannelPromise> queuedPromises = new ArrayList<>();
+
+	//takes ownership of the packet
+	public void write(EncapsulatedPacket packet, ChannelPromise promise) {
+		if (released) {
+			packet.release();
+			promise.tryFailure(new ClosedChannelException());
+			return;
+		}
+		int packetSize = packet.getEncodedSize();
+		if ((queuedPacket != null) && ((queuedPacketSize + packetSize) > getMaxDatagramSize())) {
+			sendQueuedPacket();
+		}
+		if (queuedPacket == null) {
+			queuedPacket = RakNetEncapsulatedData.newInstance();
+			queuedPacketSize = RakNetEncapsulatedData.HEADER_SIZE;
+			flushDeadline = System.nanoTime() + FLUSH_INTERVAL;
+			wakeAt(flushDeadline);
+		}
+		queuedPacket.addPacket(packet);
+		queuedPacketSize += packetSize;
+		if (!promise.isVoid()) {
+			queuedPromises.add(promise);
+		}
+	}
+
+	//sends datagram that is not full yet
+	public void flush() {
+		sendQueuedPacket();
+	}
+
+	protected void sendQueuedPacket() {
+		if (queuedPacket == null) {
+			return;
+		}
+		RakNetEncapsulatedData rpacket = queuedPacket;
+		queuedPacket = null;
+		ChannelPromise promise = null;
+		if (queuedPromises.isEmpty()) {
+			promise = voidPromise();
+		} else if (queuedPromises.size() == 1) {
+			promise = queuedPromises.get(0);
+		} else {
+			promise = queuedPromises.get(0).channel().newPromise();
+			promise.addListener(new PromiseNotifier<>(queuedPromises.toArray(new ChannelPromise[queuedPromises.size()])));
+		}
+		queuedPromises.clear();
+		//peer that doesn't confirm packets would make us buffer everything that is written to it
+		int size = rpacket.getEncodedSize();
+		if ((sendQueueBytes + size) > Constants.MAX_SEND_QUEUE_BYTES) {
+			IllegalStateException cause = new IllegalStateException("Too many bytes waiting to be sent, max: " + Constants.MAX_SEND_QUEUE_BYTES);
+			rpacket.release();
+			promise.tryFailure(cause);
+			close(cause);
+			return;
+		}
+		sendQueueBytes += size;
+		sendQueue.add(new QueuedDatagram(rpacket, promise));
+		sendQueuedDatagrams();
+	}
+
+	//full datagrams wait in send queue until congestion control allows to send them
+	protected final ArrayDeque<QueuedDatagram> sendQueue = new ArrayDeque<>(4);
+	protected int sendQueueBytes;
+	protected CongestionControl congestionControl;
+	protected boolean pacingPending;
+	protected long pacingDeadline;
+
+	protected boolean sendQueuedDatagrams() {
+		if (pacingPending) {
+			return false;
+		}
+		CongestionControl congestionControl = getCongestionControl();
+		boolean sent = false;
+		QueuedDatagram datagram = null;
+		while ((datagram = sendQueue.peek()) != null) {
+			int size = datagram.packet.getEncodedSize();
+			//congestion window may be unlimited, but peer that doesn't confirm packets still can't make us keep everything that was sent to it
+			//resent packets replace the ones that are already in flight, so this is the only place where it grows
+			if ((bytesInFlight + size) > Constants.MAX_SEND_QUEUE_BYTES) {
+				close(new IllegalStateException("Too many unconfirmed bytes in flight, max: " + Constants.MAX_SEND_QUEUE_BYTES));
+				return sent;
+			}
+			//always allow at least one datagram in flight, otherwise nothing would ever open the window
+			if ((bytesInFlight > 0) && ((bytesInFlight + size) > congestionControl.getWindow())) {
+				break;
+			}
+			long now = System.nanoTime();
+			long delay = congestionControl.getSendDelay(now);
+			if (delay > 0) {
+				pacingPending = true;
+				pacingDeadline = now + delay;
+				wakeAt(pacingDeadline);
+				break;
+			}
+			sendQueue.poll();
+			sendQueueBytes -= size;
+			sendRakNetPacket(datagram.packet, datagram.promise, now);
+			sent = true;
+		}
+		return sent;
+	}
+
+	protected static final class QueuedDatagram {
+		protected final RakNetEncapsulatedData packet;
+		protected final ChannelPromise promise;
+		protected QueuedDatagram(RakNetEncapsulatedData packet, ChannelPromise promise) {
+			this.packet = packet;
+			this.promise = promise;
+		}
+	}
+
+	//sent packets are tracked by a free running seq id, only its lower 24 bits are sent
+	protected final SequenceRingBuffer<RakNetEncapsulatedData> sentPackets = new SequenceRingBuffer<>(16);
+	protected int bytesInFlight;
+	protected int currentRakSeqID = 0;
+	protected final RetransmissionTimeout rto = new RetransmissionTimeout();
+	protected boolean resendPending;
+	protected long resendDeadline;
+
+	//sent packets buffer holds one reference until packet is confirmed, the other one is passed to write
+	protected void sendRakNetPacket(RakNetEncapsulatedData rpacket, ChannelPromise promise, long now) {
+		int seqId = currentRakSeqID++;
+		rpacket.setSeqId(seqId & Utils.SEQ_MASK);
+		sentPackets.add(seqId, rpacket);
+		int size = rpacket.getEncodedSize();
+		bytesInFlight += size;
+		long deadline = now + rto.getResendTimeout(rpacket.getResendCount());
+		rpacket.setSendTime(now);
+		rpacket.setResendDeadline(deadline);
+		if (!resendPending || ((deadline - resendDeadline) < 0)) {
+			resendPending = true;
+			resendDeadline = deadline;
+			wakeAt(deadline);
+		}
+		getCongestionControl().onSend(size, now);
+		writePacket(rpacket.retain(), promise);
+	}
+
+	protected void confirmRakNetPackets(int idstart, int idfinish) {
+		int count = Utils.seqDiff(idfinish, idstart);
+		if ((count < 0) || (count > Constants.MAX_PACKET_LOSS)) {
+			throw new DecoderException("Too big packet loss (ack confirm range)");
+		}
+		CongestionControl congestionControl = getCongestionControl();
+		long now = System.nanoTime();
+		int start = getSentSeqId(idstart);
+		for (int id = start; id != (start + count + 1); id++) {
+			RakNetEncapsulatedData packet = removeSentPacket(id);
+			if (packet != null) {
+				//resent packets get new seq ids, so the ack always belongs to the latest send of the packet
+				long rtt = now - packet.getSendTime();
+				rto.addSample(rtt);
+				congestionControl.onAck(packet.getEncodedSize(), rtt, now);
+				packet.release();
+			}
+		}
+	}
+
+	//resent packets bypass congestion window, they replace lost ones that were already accounted in flight
+	protected boolean resendRakNetPackets(int idstart, int idfinish) {
+		int count = Utils.seqDiff(idfinish, idstart);
+		if ((count < 0) || (count > Constants.MAX_PACKET_LOSS)) {
+			throw new DecoderException("Too big packet loss (nack resend range)");
+		}
+		boolean resent = false;
+		int start = getSentSeqId(idstart);
+		for (int id = start; id != (start + count + 1); id++) {
+			RakNetEncapsulatedData packet = removeSentPacket(id);
+			if (packet != null) {
+				resent = true;
+				resendRakNetPacket(packet);
+			}
+		}
+		return resent;
+	}
+
+	protected void resendTimedOutPackets(long now) {
+		resendPending = false;
+		long nextDeadline = 0;
+		boolean hasNextDeadline = false;
+		boolean lost = false;
+		//resent packets are added after current last seq, so iteration stops before reaching them
+		int lastSeqId = sentPackets.getNextSequence();
+		for (int seqId = sentPackets.getFirstSequence(); seqId != lastSeqId; seqId++) {
+			RakNetEncapsulatedData packet = sentPackets.get(seqId);
+			if (packet == null) {
+				continue;
+			}
+			if ((packet.getResendDeadline() - now) <= 0) {
+				if (!lost) {
+					lost = true;
+					getCongestionControl().onLoss(true, now);
+				}
+				removeSentPacket(seqId);
+				packet.incResendCount();
+				resendRakNetPacket(packet);
+			} else if (!hasNextDeadline || ((packet.getResendDeadline() - nextDeadline) < 0)) {
+				nextDeadline = packet.getResendDeadline();
+				hasNextDeadline = true;
+			}
+		}
+		if (hasNextDeadline && (!resendPending || ((nextDeadline - resendDeadline) < 0))) {
+			resendPending = true;
+			resendDeadline = nextDeadline;
+		}
+	}
+
+	protected void resendRakNetPacket(RakNetEncapsulatedData rpacket) {
+		if (rpacket.removeUnreliablePackets()) {
+			sendRakNetPacket(rpacket, voidPromise(), System.nanoTime());
+		} else {
+			rpacket.release();
+		}
+	}
+
+	protected RakNetEncapsulatedData removeSentPacket(int id) {
+		RakNetEncapsulatedData packet = sentPackets.remove(id);
+		if (packet != null) {
+			bytesInFlight -= packet.getEncodedSize();
+		}
+		return packet;
+	}
+
+	//expands received 24 bit seq id to the nearest sent seq id
+	protected int getSentSeqId(int seqId) {
+		return currentRakSeqID + Utils.seqDiff(seqId, currentRakSeqID & Utils.SEQ_MASK);
+	}
+
+}
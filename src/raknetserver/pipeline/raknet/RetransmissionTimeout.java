@@ -0,0 +1,45 @@
+package raknetserver.pipeline.raknet;
+
+import java.util.concurrent.TimeUnit;
+
+import raknetserver.utils.Constants;
+
+//smoothed rtt and retransmission timeout estimation (rfc 6298), all values are in nanoseconds
+public class RetransmissionTimeout {
+
+	protected static final long MIN_RTO = TimeUnit.MILLISECONDS.toNanos(Constants.PACKET_RESEND_MIN_TIMEOUT);
+	protected static final long MAX_RTO = TimeUnit.MILLISECONDS.toNanos(Constants.PACKET_RESEND_MAX_TIMEOUT);
+
+	protected long srtt = -1;
+	protected long rttvar;
+	protected long rto = TimeUnit.MILLISECONDS.toNanos(Constants.PACKET_RESEND_INITIAL_TIMEOUT);
+
+	public void addSample(long rtt) {
+		if (srtt == -1) {
+			srtt = rtt;
+			rttvar = rtt >> 1;
+		} else {
+			rttvar = ((rttvar * 3) + Math.abs(srtt - rtt)) >> 2;
+			srtt = ((srtt * 7) + rtt) >> 3;
+		}
+		rto = Math.max(MIN_RTO, Math.min(MAX_RTO, srtt + (rttvar << 2)));
+	}
+
+	public long getSRTT() {
+		return srtt;
+	}
+
+	public long getRTTVar() {
+		return rttvar;
+	}
+
+	public long getRTO() {
+		return rto;
+	}
+
+	//timeout is doubled for each time the packet was already resent because of timeout
+	public long getResendTimeout(int resends) {
+		return Math.min(MAX_RTO, rto << Math.min(resends, 16));
+	}
+
+}
@@ -0,0 +1,80 @@
+package raknetserver.pipeline.raknet;
+
+import java.util.concurrent.TimeUnit;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.util.concurrent.ScheduledFuture;
+import raknetserver.packet.RakNetConstants;
+import raknetserver.packet.RakNetDataSerializer;
+import raknetserver.pipeline.raknet.RakNetPacketConnectionEstablishHandler.PingHandler;
+import raknetserver.utils.Constants;
+
+//answers unconnected pings with pong that is encoded once per refresh interval instead of once per ping
+//pong is cached only if ping handler provides cached server info, otherwise pings are answered by connection handler
+public class UnconnectedPingResponder {
+
+	//ping id + client time + magic + client guid
+	protected static final int PING_SIZE = 1 + 8 + 16 + 8;
+
+	protected final PingHandler pinghandler;
+	//everything that follows pong id and client time
+	protected volatile byte[] pongTail;
+	protected ScheduledFuture<?> refreshTask;
+
+	public UnconnectedPingResponder(PingHandler pinghandler) {
+		this.pinghandler = pinghandler;
+	}
+
+	public void start(Channel server) {
+		refreshTask = server.eventLoop().scheduleAtFixedRate(
+			() -> pinghandler.executeHandler(() -> refresh(pinghandler.getCachedServerInfo())),
+			0, Constants.PING_CACHE_INTERVAL, TimeUnit.MILLISECONDS
+		);
+	}
+
+	public void stop() {
+		if (refreshTask != null) {
+			refreshTask.cancel(false);
+			refreshTask = null;
+		}
+	}
+
+	protected void refresh(String info) {
+		if (info == null) {
+			pongTail = null;
+			return;
+		}
+		ByteBuf buf = Unpooled.buffer();
+		buf.writeLong(RakNetConstants.SERVER_ID);
+		buf.writeBytes(RakNetConstants.MAGIC);
+		RakNetDataSerializer.writeString(buf, info);
+		byte[] tail = new byte[buf.readableBytes()];
+		buf.readBytes(tail);
+		pongTail = tail;
+	}
+
+	public static boolean isPing(ByteBuf datagram) {
+		return (datagram.readableBytes() >= PING_SIZE) && (datagram.getUnsignedByte(datagram.readerIndex()) == RakNetConstants.ID_RN_UNCONNECTED_PING);
+	}
+
+	//returns null until server info is received for the first time, or if cache is disabled
+	public ByteBuf createPong(ByteBufAllocator alloc, long clientTime) {
+		byte[] tail = pongTail;
+		if (tail == null) {
+			return null;
+		}
+		ByteBuf pong = alloc.buffer(1 + 8 + tail.length);
+		pong.writeByte(RakNetConstants.ID_RN_UNCONNECTED_PONG);
+		pong.writeLong(clientTime);
+		pong.writeBytes(tail);
+		return pong;
+	}
+
+	public ByteBuf createPong(ByteBufAllocator alloc, ByteBuf ping) {
+		return createPong(alloc, ping.getLong(ping.readerIndex() + 1));
+	}
+
+}
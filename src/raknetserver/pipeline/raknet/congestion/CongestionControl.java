@@ -0,0 +1,35 @@
+package raknetserver.pipeline.raknet.congestion;
+
+//all times are System.nanoTime based, all sizes are in bytes
+public interface CongestionControl {
+
+	//max amount of unconfirmed bytes in flight
+	public int getWindow();
+
+	//how long to wait before sending next datagram, used for pacing
+	public long getSendDelay(long now);
+
+	public void onSend(int bytes, long now);
+
+	public void onAck(int bytes, long rtt, long now);
+
+	public void onLoss(boolean timeout, long now);
+
+	public static CongestionControl create(String type, int mss) {
+		switch (type) {
+			case "window": {
+				return new SlidingWindowCongestionControl(mss);
+			}
+			case "pacing": {
+				return new PacingCongestionControl(mss);
+			}
+			case "none": {
+				return new NoCongestionControl();
+			}
+			default: {
+				throw new IllegalArgumentException("Unknown congestion control type " + type);
+			}
+		}
+	}
+
+}
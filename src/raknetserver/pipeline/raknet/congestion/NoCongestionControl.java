@@ -0,0 +1,27 @@
+package raknetserver.pipeline.raknet.congestion;
+
+public class NoCongestionControl implements CongestionControl {
+
+	@Override
+	public int getWindow() {
+		return Integer.MAX_VALUE;
+	}
+
+	@Override
+	public long getSendDelay(long now) {
+		return 0;
+	}
+
+	@Override
+	public void onSend(int bytes, long now) {
+	}
+
+	@Override
+	public void onAck(int bytes, long rtt, long now) {
+	}
+
+	@Override
+	public void onLoss(boolean timeout, long now) {
+	}
+
+}
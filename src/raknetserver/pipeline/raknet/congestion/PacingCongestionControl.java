@@ -0,0 +1,108 @@
+package raknetserver.pipeline.raknet.congestion;
+
+import java.util.concurrent.TimeUnit;
+
+import raknetserver.utils.Constants;
+
+//bbr-style control: window and pacing rate are derived from estimated bottleneck bandwidth and min rtt, losses are ignored
+public class PacingCongestionControl implements CongestionControl {
+
+	protected static final double STARTUP_GAIN = 2.885;
+	protected static final double[] PROBE_GAINS = new double[] { 1.25, 0.75, 1, 1, 1, 1, 1, 1 };
+	protected static final double WINDOW_GAIN = 2;
+	protected static final int BANDWIDTH_ROUNDS = 10;
+	protected static final long MIN_RTT_EXPIRE = TimeUnit.SECONDS.toNanos(10);
+	protected static final long MIN_ROUND_TIME = TimeUnit.MILLISECONDS.toNanos(1);
+
+	protected final int minWindow;
+	protected final int maxWindow;
+	protected int window;
+
+	protected long minRtt = Long.MAX_VALUE;
+	protected long minRttTime;
+
+	//bandwidth samples (bytes per nanosecond) of last rounds, max of them is used as bottleneck bandwidth estimate
+	protected final double[] bandwidthSamples = new double[BANDWIDTH_ROUNDS];
+	protected int round;
+	protected long roundStart;
+	protected long roundAckedBytes;
+	protected double bandwidth;
+
+	protected boolean startup = true;
+	protected double startupBandwidth;
+	protected int startupStaleRounds;
+
+	protected double pacingGain = STARTUP_GAIN;
+	protected long nextSendTime;
+
+	public PacingCongestionControl(int mss) {
+		this.minWindow = mss * 4;
+		this.maxWindow = Math.max(minWindow, Constants.MAX_CONGESTION_WINDOW);
+		this.window = Math.min(maxWindow, mss * Constants.INITIAL_CONGESTION_WINDOW);
+	}
+
+	@Override
+	public int getWindow() {
+		return window;
+	}
+
+	@Override
+	public long getSendDelay(long now) {
+		return bandwidth > 0 ? nextSendTime - now : 0;
+	}
+
+	@Override
+	public void onSend(int bytes, long now) {
+		if (bandwidth > 0) {
+			if ((nextSendTime - now) < 0) {
+				nextSendTime = now;
+			}
+			nextSendTime += (long) (bytes / (bandwidth * pacingGain));
+		}
+	}
+
+	@Override
+	public void onAck(int bytes, long rtt, long now) {
+		if ((rtt <= minRtt) || ((now - minRttTime) > MIN_RTT_EXPIRE)) {
+			minRtt = rtt;
+			minRttTime = now;
+		}
+		if (roundAckedBytes == 0) {
+			roundStart = now - rtt;
+		}
+		roundAckedBytes += bytes;
+		long roundTime = now - roundStart;
+		if (roundTime >= Math.max(minRtt, MIN_ROUND_TIME)) {
+			nextRound(roundAckedBytes / (double) roundTime);
+			roundAckedBytes = 0;
+		}
+	}
+
+	@Override
+	public void onLoss(boolean timeout, long now) {
+	}
+
+	protected void nextRound(double sample) {
+		bandwidthSamples[round % BANDWIDTH_ROUNDS] = sample;
+		round++;
+		bandwidth = 0;
+		for (double bandwidthSample : bandwidthSamples) {
+			bandwidth = Math.max(bandwidth, bandwidthSample);
+		}
+		if (startup) {
+			//leave startup once bandwidth stops growing by at least 25% for 3 rounds, then drain the queue for one round
+			if (bandwidth >= (startupBandwidth * 1.25)) {
+				startupBandwidth = bandwidth;
+				startupStaleRounds = 0;
+			} else if (++startupStaleRounds >= 3) {
+				startup = false;
+				pacingGain = 1 / STARTUP_GAIN;
+			}
+		} else {
+			pacingGain = PROBE_GAINS[round % PROBE_GAINS.length];
+		}
+		long bdp = (long) (bandwidth * minRtt);
+		window = (int) Math.max(minWindow, Math.min(maxWindow, bdp * (startup ? STARTUP_GAIN : WINDOW_GAIN)));
+	}
+
+}
@@ -0,0 +1,60 @@
+package raknetserver.pipeline.raknet.congestion;
+
+import raknetserver.utils.Constants;
+
+//sliding window with slow start and additive increase / multiplicative decrease
+public class SlidingWindowCongestionControl implements CongestionControl {
+
+	protected final int mss;
+	protected final int minWindow;
+	protected final int maxWindow;
+
+	protected int window;
+	protected int ssthresh = Integer.MAX_VALUE;
+	protected long srtt;
+	protected long lastDecrease;
+
+	public SlidingWindowCongestionControl(int mss) {
+		this.mss = mss;
+		this.minWindow = mss * 2;
+		this.maxWindow = Math.max(minWindow, Constants.MAX_CONGESTION_WINDOW);
+		this.window = Math.min(maxWindow, mss * Constants.INITIAL_CONGESTION_WINDOW);
+	}
+
+	@Override
+	public int getWindow() {
+		return window;
+	}
+
+	@Override
+	public long getSendDelay(long now) {
+		return 0;
+	}
+
+	@Override
+	public void onSend(int bytes, long now) {
+	}
+
+	@Override
+	public void onAck(int bytes, long rtt, long now) {
+		srtt = srtt == 0 ? rtt : ((srtt * 7) + rtt) >> 3;
+		if (window < ssthresh) {
+			window += bytes;
+		} else {
+			window += Math.max(1, (int) (((long) mss * bytes) / window));
+		}
+		window = Math.min(window, maxWindow);
+	}
+
+	@Override
+	public void onLoss(boolean timeout, long now) {
+		//decrease window at most once per rtt, all losses from the same window are a single congestion event
+		if ((now - lastDecrease) < srtt) {
+			return;
+		}
+		lastDecrease = now;
+		ssthresh = Math.max(minWindow, window >> 1);
+		window = timeout ? minWindow : ssthresh;
+	}
+
+}
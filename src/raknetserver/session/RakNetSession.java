@@ -0,0 +1,349 @@
+package raknetserver.session;
+
+import java.net.InetSocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.util.List;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.codec.DecoderException;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.internal.logging.InternalLogger;
+import io.netty.util.internal.logging.InternalLoggerFactory;
+import raknetserver.packet.EncapsulatedPacket;
+import raknetserver.packet.RakNetConstants;
+import raknetserver.packet.Reliability;
+import raknetserver.packet.internal.InternalConnectionRequest;
+import raknetserver.packet.internal.InternalDisconnect;
+import raknetserver.packet.internal.InternalKeepAlive.InternalPing;
+import raknetserver.packet.internal.InternalKeepAlive.InternalPong;
+import raknetserver.packet.internal.InternalPacket;
+import raknetserver.packet.internal.InternalPacketRegistry;
+import raknetserver.packet.internal.InternalServerHandshake;
+import raknetserver.packet.raknet.RakNetConnectionFailed;
+import raknetserver.packet.raknet.RakNetConnectionReply2;
+import raknetserver.packet.raknet.RakNetConnectionRequest1;
+import raknetserver.packet.raknet.RakNetConnectionRequest2;
+import raknetserver.packet.raknet.RakNetEncapsulatedData;
+import raknetserver.packet.raknet.RakNetPacket;
+import raknetserver.packet.raknet.RakNetPacketRegistry;
+import raknetserver.packet.raknet.RakNetReliability.RakNetACK;
+import raknetserver.packet.raknet.RakNetReliability.RakNetNACK;
+import raknetserver.pipeline.ecnapsulated.EncapsulatedPacketInboundOrderer;
+import raknetserver.pipeline.ecnapsulated.EncapsulatedPacketOutboundOrder;
+import raknetserver.pipeline.ecnapsulated.EncapsulatedPacketSplitter;
+import raknetserver.pipeline.ecnapsulated.EncapsulatedPacketUnsplitter;
+import raknetserver.pipeline.raknet.ReliabilityEngine;
+import raknetserver.pipeline.raknet.RetransmissionTimeout;
+
+//connection of a single client, all protocol state is kept in fields of this object instead of a channel with pipeline
+//session is used only from event loop of the socket that receives client datagrams, public methods called from other threads are executed on it
+//datagram reliability is handled by the same engine as in channel pipeline, reassembly, ordering and splitting stages are created only once session needs them
+public class RakNetSession {
+
+	private static final InternalLogger logger = InternalLoggerFactory.getInstance(RakNetSession.class);
+
+	protected final SessionSocketHandler socket;
+	protected final InetSocketAddress address;
+	protected final long guid;
+	protected final int mtu;
+	protected volatile boolean active = true;
+	protected long lastReadTime = System.nanoTime();
+	protected volatile Object attachment;
+	protected final ReliabilityEngine engine;
+
+	public RakNetSession(SessionSocketHandler socket, InetSocketAddress address, long guid, int mtu) {
+		this.socket = socket;
+		this.address = address;
+		this.guid = guid;
+		this.mtu = mtu;
+		this.engine = new SessionReliabilityEngine();
+	}
+
+	public InetSocketAddress getAddress() {
+		return address;
+	}
+
+	public long getGUID() {
+		return guid;
+	}
+
+	public int getMtu() {
+		return mtu;
+	}
+
+	public EventExecutor executor() {
+		return socket.executor();
+	}
+
+	public boolean isActive() {
+		return active;
+	}
+
+	public Object getAttachment() {
+		return attachment;
+	}
+
+	public void setAttachment(Object attachment) {
+		this.attachment = attachment;
+	}
+
+	public RetransmissionTimeout getRetransmissionTimeout() {
+		return engine.getRetransmissionTimeout();
+	}
+
+	public int getBytesInFlight() {
+		return engine.getBytesInFlight();
+	}
+
+	public void send(ByteBuf data) {
+		send(data, Reliability.RELIABLE_ORDERED, 0);
+	}
+
+	//takes ownership of the data, it is sent once datagram is full, on flush, or after flush interval
+	public void send(ByteBuf data, Reliability reliability, int orderChannel) {
+		if ((orderChannel < 0) || (orderChannel >= RakNetConstants.MAX_ORDER_CHANNELS)) {
+			data.release();
+			throw new IllegalArgumentException("Invalid order channel " + orderChannel);
+		}
+		if (!executor().inEventLoop()) {
+			executor().execute(() -> send(data, reliability, orderChannel));
+			return;
+		}
+		if (!active) {
+			data.release();
+			return;
+		}
+		//prepend packet id without copying user data
+		ByteBuf header = socket.alloc().buffer(1).writeByte(socket.userPacketId);
+		writeInternalData(socket.alloc().compositeBuffer(2).addComponents(true, header, data), reliability, orderChannel);
+	}
+
+	public void flush() {
+		if (!executor().inEventLoop()) {
+			executor().execute(this::flush);
+			return;
+		}
+		if (active) {
+			engine.flush();
+		}
+	}
+
+	public void close() {
+		if (!executor().inEventLoop()) {
+			executor().execute(this::close);
+			return;
+		}
+		if (!active) {
+			return;
+		}
+		active = false;
+		engine.release(new ClosedChannelException());
+		if (unsplitter != null) {
+			unsplitter.clear();
+		}
+		if (orderer != null) {
+			orderer.clear();
+		}
+		socket.removeSession(this);
+	}
+
+	//takes ownership of the datagram, protocol errors close the session
+	protected void read(ByteBuf data) {
+		lastReadTime = System.nanoTime();
+		RakNetPacket packet = null;
+		try {
+			packet = RakNetPacketRegistry.getPacket(data.readUnsignedByte());
+			packet.decode(data);
+			if (data.readableBytes() > 0) {
+				throw new DecoderException(data.readableBytes() + " bytes left after decoding packet " + packet.getClass());
+			}
+			if (packet instanceof RakNetEncapsulatedData) {
+				engine.read((RakNetEncapsulatedData) packet);
+			} else if (packet instanceof RakNetACK) {
+				engine.read((RakNetACK) packet);
+			} else if (packet instanceof RakNetNACK) {
+				engine.read((RakNetNACK) packet);
+			} else if (packet instanceof RakNetConnectionRequest1) {
+				socket.handleConnectionRequest1(address, (RakNetConnectionRequest1) packet);
+			} else if (packet instanceof RakNetConnectionRequest2) {
+				handleConnectionRequest2((RakNetConnectionRequest2) packet);
+			}
+		} catch (Throwable t) {
+			logger.debug("Closing session {} because of exception", address, t);
+			close();
+		} finally {
+			ReferenceCountUtil.release(packet);
+			data.release();
+		}
+	}
+
+	//if guid matches then it means that reply2 packet didn't arrive to the clients
+	//otherwise it means that it is actually a new client connecting using already taken ip+port
+	protected void handleConnectionRequest2(RakNetConnectionRequest2 request) {
+		if (request.getGUID() == guid) {
+			socket.writePacket(new RakNetConnectionReply2(mtu), address);
+		} else {
+			socket.writePacket(new RakNetConnectionFailed(), address);
+			close();
+		}
+	}
+
+	protected EncapsulatedPacketUnsplitter unsplitter;
+	protected EncapsulatedPacketInboundOrderer orderer;
+
+	//called by engine for every packet that wasn't received before, packet is released together with its datagram
+	protected void readEncapsulatedPacket(EncapsulatedPacket epacket) {
+		EncapsulatedPacket fullPacket = null;
+		if (epacket.hasSplit()) {
+			if (unsplitter == null) {
+				unsplitter = new EncapsulatedPacketUnsplitter();
+			}
+			fullPacket = unsplitter.unsplit(executor(), socket.alloc(), epacket);
+			if (fullPacket == null) {
+				return;
+			}
+		} else {
+			fullPacket = epacket.retain();
+		}
+		if (orderer == null) {
+			orderer = new EncapsulatedPacketInboundOrderer();
+		}
+		List<Object> readList = socket.readList;
+		try {
+			orderer.order(fullPacket, readList);
+		} finally {
+			fullPacket.release();
+		}
+		try {
+			for (int i = 0; i < readList.size(); i++) {
+				ByteBuf data = (ByteBuf) readList.set(i, null);
+				if (active) {
+					readInternalPacket(data);
+				} else {
+					data.release();
+				}
+			}
+		} finally {
+			readList.forEach(ReferenceCountUtil::release);
+			readList.clear();
+		}
+	}
+
+	//takes ownership of the data, user data is passed to listener with internal packet id skipped
+	protected void readInternalPacket(ByteBuf data) {
+		if (!data.isReadable()) {
+			data.release();
+			return;
+		}
+		int packetId = data.readUnsignedByte();
+		if (packetId == socket.userPacketId) {
+			socket.fireMessage(this, data);
+			return;
+		}
+		try {
+			InternalPacket packet = InternalPacketRegistry.getPacket(packetId);
+			packet.decode(data);
+			if (data.readableBytes() > 0) {
+				throw new DecoderException(data.readableBytes() + " bytes left after decoding packet " + packet.getClass());
+			}
+			if (packet instanceof InternalConnectionRequest) {
+				writeInternalPacket(new InternalServerHandshake(address, ((InternalConnectionRequest) packet).getTimeStamp()));
+				engine.flush();
+			} else if (packet instanceof InternalPing) {
+				writeInternalPacket(new InternalPong(((InternalPing) packet).getKeepAlive()));
+				engine.flush();
+			} else if (packet instanceof InternalDisconnect) {
+				close();
+			}
+		} finally {
+			data.release();
+		}
+	}
+
+	protected EncapsulatedPacketOutboundOrder outboundOrder;
+	protected EncapsulatedPacketSplitter splitter;
+
+	protected void writeInternalPacket(InternalPacket packet) {
+		ByteBuf buf = socket.alloc().buffer();
+		buf.writeByte(InternalPacketRegistry.getId(packet));
+		packet.encode(buf);
+		writeInternalData(buf, Reliability.RELIABLE_ORDERED, 0);
+	}
+
+	//takes ownership of the data that already starts with internal packet id
+	protected void writeInternalData(ByteBuf data, Reliability reliability, int orderChannel) {
+		if (outboundOrder == null) {
+			outboundOrder = new EncapsulatedPacketOutboundOrder();
+			splitter = new EncapsulatedPacketSplitter();
+		}
+		EncapsulatedPacket packet = outboundOrder.createPacket(data, reliability, orderChannel);
+		List<Object> writeList = socket.writeList;
+		try {
+			splitter.split(mtu, packet, writeList);
+			for (int i = 0; i < writeList.size(); i++) {
+				engine.write((EncapsulatedPacket) writeList.set(i, null), socket.voidPromise());
+			}
+		} finally {
+			packet.release();
+			writeList.forEach(ReferenceCountUtil::release);
+			writeList.clear();
+		}
+	}
+
+	//datagrams and acks are encoded and written to socket right away, socket flushes them once per event loop pass
+	protected class SessionReliabilityEngine extends ReliabilityEngine {
+
+		public SessionReliabilityEngine() {
+			super(socket.executor());
+		}
+
+		@Override
+		protected int getMtu() {
+			return mtu;
+		}
+
+		@Override
+		protected void writePacket(RakNetPacket packet, ChannelPromise promise) {
+			try {
+				socket.writePacket(packet, address);
+			} finally {
+				ReferenceCountUtil.release(packet);
+			}
+		}
+
+		@Override
+		protected ChannelPromise voidPromise() {
+			return socket.voidPromise();
+		}
+
+		@Override
+		protected void flushPackets() {
+		}
+
+		@Override
+		protected void readEncapsulatedPacket(EncapsulatedPacket packet) {
+			if (active) {
+				RakNetSession.this.readEncapsulatedPacket(packet);
+			}
+		}
+
+		@Override
+		protected void close(Throwable cause) {
+			logger.debug("Closing session {} because of exception", address, cause);
+			RakNetSession.this.close();
+		}
+
+		@Override
+		protected void onTimer() {
+			try {
+				super.onTimer();
+			} catch (Throwable t) {
+				close(t);
+			}
+		}
+
+	}
+
+}
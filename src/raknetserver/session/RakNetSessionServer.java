@@ -0,0 +1,104 @@
+package raknetserver.session;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollDatagramChannel;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioDatagramChannel;
+import raknetserver.pipeline.raknet.HandshakeCookieGenerator;
+import raknetserver.pipeline.raknet.RakNetPacketConnectionEstablishHandler.PingHandler;
+import raknetserver.pipeline.raknet.UnconnectedPingResponder;
+import raknetserver.utils.ConnectionRateLimiter;
+import raknetserver.utils.Constants;
+
+//alternative to RakNetServer for very high connection counts: connections are compact sessions in socket tables instead of child channels
+//with epoll transport several sockets are bound to the same port with SO_REUSEPORT, each one is served by its own event loop
+public class RakNetSessionServer {
+
+	protected final InetSocketAddress local;
+	protected final PingHandler pinghandler;
+	protected final SessionListener listener;
+	protected final int userPacketId;
+
+	public RakNetSessionServer(InetSocketAddress local, PingHandler pinghandler, SessionListener listener, int userPacketId) {
+		this.local = local;
+		this.pinghandler = pinghandler;
+		this.listener = listener;
+		this.userPacketId = userPacketId;
+	}
+
+	private EventLoopGroup group = null;
+	private final List<Channel> sockets = new ArrayList<>();
+	private final List<SessionSocketHandler> handlers = new ArrayList<>();
+	private UnconnectedPingResponder pingresponder = null;
+
+	public void start() {
+		UnconnectedPingResponder pingresponder = new UnconnectedPingResponder(pinghandler);
+		HandshakeCookieGenerator cookies = Constants.HANDSHAKE_COOKIES ? new HandshakeCookieGenerator(Constants.HANDSHAKE_COOKIE_LIFETIME) : null;
+		ConnectionRateLimiter ratelimiter = Constants.MAX_CONNECTIONS_PER_IP > 0 ? new ConnectionRateLimiter(Constants.MAX_CONNECTIONS_PER_IP) : null;
+		Bootstrap bootstrap = new Bootstrap();
+		int count = 1;
+		if (Constants.UDP_TRANSPORT.equals("epoll") && Epoll.isAvailable()) {
+			count = Constants.UDP_IO_THREADS;
+			group = new EpollEventLoopGroup(count);
+			bootstrap
+			.group(group)
+			.channel(EpollDatagramChannel.class)
+			.option(EpollChannelOption.SO_REUSEPORT, true);
+		} else {
+			group = new NioEventLoopGroup(1);
+			bootstrap
+			.group(group)
+			.channel(NioDatagramChannel.class);
+		}
+		for (int i = 0; i < count; i++) {
+			SessionSocketHandler handler = new SessionSocketHandler(listener, userPacketId, pingresponder, cookies, ratelimiter);
+			//all sockets have to bind to the same port, even if it was chosen by system for the first one
+			Channel socket = bootstrap.clone()
+			.handler(handler)
+			.bind(sockets.isEmpty() ? local : sockets.get(0).localAddress()).syncUninterruptibly().channel();
+			sockets.add(socket);
+			handlers.add(handler);
+		}
+		//there is no server channel, so cached server info is refreshed on event loop of the first socket
+		pingresponder.start(sockets.get(0));
+		this.pingresponder = pingresponder;
+	}
+
+	public void stop() {
+		if (pingresponder != null) {
+			pingresponder.stop();
+			pingresponder = null;
+		}
+		for (Channel socket : sockets) {
+			socket.close().syncUninterruptibly();
+		}
+		sockets.clear();
+		handlers.clear();
+		if (group != null) {
+			group.shutdownGracefully();
+			group = null;
+		}
+	}
+
+	public InetSocketAddress getLocalAddress() {
+		return sockets.isEmpty() ? null : (InetSocketAddress) sockets.get(0).localAddress();
+	}
+
+	public int getSessionCount() {
+		int count = 0;
+		for (SessionSocketHandler handler : handlers) {
+			count += handler.getSessionCount();
+		}
+		return count;
+	}
+
+}
@@ -0,0 +1,15 @@
+package raknetserver.session;
+
+import io.netty.buffer.ByteBuf;
+
+//all methods are called from session event loop
+public interface SessionListener {
+
+	public void onConnect(RakNetSession session);
+
+	//listener takes ownership of the data
+	public void onMessage(RakNetSession session, ByteBuf data);
+
+	public void onDisconnect(RakNetSession session);
+
+}
@@ -0,0 +1,231 @@
+package raknetserver.session;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.socket.DatagramPacket;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.ScheduledFuture;
+import io.netty.util.internal.logging.InternalLogger;
+import io.netty.util.internal.logging.InternalLoggerFactory;
+import raknetserver.packet.RakNetConstants;
+import raknetserver.packet.raknet.RakNetConnectionReply1;
+import raknetserver.packet.raknet.RakNetConnectionReply2;
+import raknetserver.packet.raknet.RakNetConnectionRequest1;
+import raknetserver.packet.raknet.RakNetConnectionRequest2;
+import raknetserver.packet.raknet.RakNetInvalidVersion;
+import raknetserver.packet.raknet.RakNetPacket;
+import raknetserver.pipeline.raknet.HandshakeCookieGenerator;
+import raknetserver.pipeline.raknet.UnconnectedPingResponder;
+import raknetserver.utils.ConnectionRateLimiter;
+import raknetserver.utils.Constants;
+
+//handler of a single udp socket, sessions of all clients that send datagrams to this socket are kept in its table
+//socket is served by a single event loop, so neither table nor sessions need synchronization
+//offline handshake is answered statelessly, session is created only for valid connection request 2
+public class SessionSocketHandler extends ChannelInboundHandlerAdapter {
+
+	private static final InternalLogger logger = InternalLoggerFactory.getInstance(SessionSocketHandler.class);
+
+	protected static final long TIMEOUT_CHECK_INTERVAL = 1000;
+
+	protected final SessionListener listener;
+	protected final int userPacketId;
+	protected final UnconnectedPingResponder pingresponder;
+	protected final HandshakeCookieGenerator cookies;
+	protected final ConnectionRateLimiter ratelimiter;
+	protected final HashMap<InetSocketAddress, RakNetSession> sessions = new HashMap<>();
+	protected volatile int sessionCount;
+	protected ChannelHandlerContext ctx;
+	protected ScheduledFuture<?> timeoutTask;
+
+	//used by sessions of this socket while they read or write packets
+	protected final ArrayList<Object> readList = new ArrayList<>();
+	protected final ArrayList<Object> writeList = new ArrayList<>();
+
+	public SessionSocketHandler(SessionListener listener, int userPacketId, UnconnectedPingResponder pingresponder, HandshakeCookieGenerator cookies, ConnectionRateLimiter ratelimiter) {
+		this.listener = listener;
+		this.userPacketId = userPacketId;
+		this.pingresponder = pingresponder;
+		this.cookies = cookies;
+		this.ratelimiter = ratelimiter;
+	}
+
+	public int getSessionCount() {
+		return sessionCount;
+	}
+
+	public EventExecutor executor() {
+		return ctx.executor();
+	}
+
+	public ByteBufAllocator alloc() {
+		return ctx.alloc();
+	}
+
+	public ChannelPromise voidPromise() {
+		return ctx.voidPromise();
+	}
+
+	@Override
+	public void handlerAdded(ChannelHandlerContext ctx) throws Exception {
+		this.ctx = ctx;
+		super.handlerAdded(ctx);
+	}
+
+	@Override
+	public void channelActive(ChannelHandlerContext ctx) throws Exception {
+		timeoutTask = ctx.executor().scheduleAtFixedRate(this::closeTimedOutSessions, TIMEOUT_CHECK_INTERVAL, TIMEOUT_CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+		super.channelActive(ctx);
+	}
+
+	@Override
+	public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+		if (timeoutTask != null) {
+			timeoutTask.cancel(false);
+			timeoutTask = null;
+		}
+		new ArrayList<>(sessions.values()).forEach(RakNetSession::close);
+		super.channelInactive(ctx);
+	}
+
+	@Override
+	public void channelRead(ChannelHandlerContext ctx, Object msg) {
+		DatagramPacket packet = (DatagramPacket) msg;
+		InetSocketAddress sender = packet.sender();
+		ByteBuf data = packet.content();
+		if (!data.isReadable()) {
+			packet.release();
+			return;
+		}
+		if ((pingresponder != null) && UnconnectedPingResponder.isPing(data)) {
+			ByteBuf pong = pingresponder.createPong(ctx.alloc(), data);
+			packet.release();
+			if (pong != null) {
+				write(pong, sender);
+			}
+			return;
+		}
+		RakNetSession session = sessions.get(sender);
+		if (session != null) {
+			session.read(data);
+			return;
+		}
+		try {
+			handleOfflinePacket(sender, data);
+		} catch (RuntimeException e) {
+			//malformed handshake packet
+		} finally {
+			packet.release();
+		}
+	}
+
+	protected void handleOfflinePacket(InetSocketAddress sender, ByteBuf data) {
+		int packetId = data.readUnsignedByte();
+		if (packetId == RakNetConstants.ID_RN_OPEN_CONNECTION_REQUEST_1) {
+			RakNetConnectionRequest1 request = new RakNetConnectionRequest1();
+			request.decode(data);
+			handleConnectionRequest1(sender, request);
+		} else if (packetId == RakNetConstants.ID_RN_OPEN_CONNECTION_REQUEST_2) {
+			RakNetConnectionRequest2 request = new RakNetConnectionRequest2();
+			request.decode(data);
+			if (request.getMtu() < RakNetConstants.MIN_MTU) {
+				return;
+			}
+			//no reply, so sender of spoofed packet can't be used to amplify traffic
+			if ((cookies != null) && (!request.hasCookie() || !cookies.validate(sender, request.getCookie()))) {
+				return;
+			}
+			if ((ratelimiter != null) && !ratelimiter.tryAcquire(sender.getAddress())) {
+				return;
+			}
+			RakNetSession session = new RakNetSession(this, sender, request.getGUID(), request.getMtu());
+			sessions.put(sender, session);
+			sessionCount = sessions.size();
+			writePacket(new RakNetConnectionReply2(request.getMtu()), sender);
+			try {
+				listener.onConnect(session);
+			} catch (Throwable t) {
+				logger.warn("Session listener raised an exception", t);
+			}
+		}
+	}
+
+	protected void handleConnectionRequest1(InetSocketAddress sender, RakNetConnectionRequest1 request) {
+		//mtu is sent back in request 2, so it would be rejected there anyway
+		if (request.getMtu() < RakNetConstants.MIN_MTU) {
+			return;
+		}
+		if (request.getRakNetProtocolVersion() == RakNetInvalidVersion.VALID_VERSION) {
+			writePacket(cookies != null ? new RakNetConnectionReply1(request.getMtu(), cookies.create(sender)) : new RakNetConnectionReply1(request.getMtu()), sender);
+		} else {
+			writePacket(new RakNetInvalidVersion(), sender);
+		}
+	}
+
+	protected void removeSession(RakNetSession session) {
+		if (sessions.remove(session.getAddress(), session)) {
+			sessionCount = sessions.size();
+			try {
+				listener.onDisconnect(session);
+			} catch (Throwable t) {
+				logger.warn("Session listener raised an exception", t);
+			}
+		}
+	}
+
+	protected void fireMessage(RakNetSession session, ByteBuf data) {
+		try {
+			listener.onMessage(session, data);
+		} catch (Throwable t) {
+			logger.warn("Session listener raised an exception", t);
+		}
+	}
+
+	protected void closeTimedOutSessions() {
+		long timeout = TimeUnit.MILLISECONDS.toNanos(Constants.SESSION_TIMEOUT);
+		long now = System.nanoTime();
+		ArrayList<RakNetSession> expired = null;
+		for (RakNetSession session : sessions.values()) {
+			if ((now - session.lastReadTime) > timeout) {
+				if (expired == null) {
+					expired = new ArrayList<>();
+				}
+				expired.add(session);
+			}
+		}
+		if (expired != null) {
+			expired.forEach(RakNetSession::close);
+		}
+	}
+
+	protected void writePacket(RakNetPacket packet, InetSocketAddress address) {
+		ByteBuf buf = ctx.alloc().ioBuffer();
+		buf.writeByte(packet.getId());
+		packet.encode(buf);
+		write(buf, address);
+	}
+
+	//datagrams are flushed once after all event loop tasks that are already queued, so they can go out in a single sendmmsg
+	protected boolean flushScheduled = false;
+	protected final Runnable flushTask = () -> {
+		flushScheduled = false;
+		ctx.flush();
+	};
+
+	protected void write(ByteBuf buf, InetSocketAddress address) {
+		ctx.write(new DatagramPacket(buf, address), ctx.voidPromise());
+		if (!flushScheduled) {
+			flushScheduled = true;
+			ctx.executor().execute(flushTask);
+		}
+	}
+
+}
@@ -0,0 +1,258 @@
+package raknetserver.udp;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.AbstractServerChannel;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelConfig;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.DefaultChannelConfig;
+import io.netty.channel.EventLoop;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollDatagramChannel;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.socket.DatagramPacket;
+import raknetserver.packet.RakNetConstants;
+import raknetserver.packet.raknet.RakNetConnectionReply1;
+import raknetserver.packet.raknet.RakNetConnectionRequest1;
+import raknetserver.packet.raknet.RakNetConnectionRequest2;
+import raknetserver.packet.raknet.RakNetInvalidVersion;
+import raknetserver.packet.raknet.RakNetPacket;
+import raknetserver.packet.raknet.RakNetPacketRegistry;
+import raknetserver.pipeline.raknet.HandshakeCookieGenerator;
+import raknetserver.pipeline.raknet.UnconnectedPingResponder;
+import raknetserver.utils.ConnectionRateLimiter;
+
+//binds several epoll datagram sockets to the same port with SO_REUSEPORT, kernel spreads peers between them by address hash
+//datagrams are demultiplexed by sender address to child channels, and child channel writes go back through the socket that received its datagrams
+public class ReusePortUdpServerChannel extends AbstractServerChannel {
+
+	protected final ChannelConfig config = new DefaultChannelConfig(this);
+	protected final int sockets;
+	protected final EventLoopGroup ioGroup;
+	protected final List<Channel> socketChannels = new ArrayList<>();
+	protected final ConcurrentHashMap<InetSocketAddress, UdpChildChannel> children = new ConcurrentHashMap<>();
+	protected volatile boolean open = true;
+	protected volatile boolean active = false;
+
+	protected final UnconnectedPingResponder pingresponder;
+	protected final HandshakeCookieGenerator cookies;
+	protected final ConnectionRateLimiter ratelimiter;
+
+	public ReusePortUdpServerChannel(int sockets) {
+		this(sockets, null, null, null);
+	}
+
+	public ReusePortUdpServerChannel(int sockets, UnconnectedPingResponder pingresponder) {
+		this(sockets, pingresponder, null, null);
+	}
+
+	//pings from addresses without connection are answered directly by responder, without creating child channels for them
+	//if cookie generator is set, connection request 1 is answered statelessly, and child channel is created only for connection request 2 with valid cookie
+	//rate limiter limits amount of child channels created for single ip
+	public ReusePortUdpServerChannel(int sockets, UnconnectedPingResponder pingresponder, HandshakeCookieGenerator cookies, ConnectionRateLimiter ratelimiter) {
+		this.sockets = sockets;
+		this.pingresponder = pingresponder;
+		this.cookies = cookies;
+		this.ratelimiter = ratelimiter;
+		this.ioGroup = new EpollEventLoopGroup(sockets);
+	}
+
+	@Override
+	protected boolean isCompatible(EventLoop loop) {
+		return true;
+	}
+
+	@Override
+	protected SocketAddress localAddress0() {
+		return socketChannels.isEmpty() ? null : socketChannels.get(0).localAddress();
+	}
+
+	@Override
+	protected void doBind(SocketAddress local) throws Exception {
+		Bootstrap bootstrap = new Bootstrap()
+		.group(ioGroup)
+		.channel(EpollDatagramChannel.class)
+		.option(EpollChannelOption.SO_REUSEPORT, true);
+		for (int i = 0; i < sockets; i++) {
+			SocketWriter writer = new SocketWriter();
+			//all sockets have to bind to the same port, even if it was chosen by system for the first one
+			writer.socket = bootstrap.clone()
+			.handler(new ReadHandler(writer))
+			.bind(socketChannels.isEmpty() ? local : socketChannels.get(0).localAddress()).sync().channel();
+			socketChannels.add(writer.socket);
+		}
+		active = true;
+	}
+
+	@Override
+	protected void doBeginRead() {
+	}
+
+	@Override
+	protected void doClose() throws Exception {
+		open = false;
+		active = false;
+		for (UdpChildChannel child : children.values()) {
+			child.close();
+		}
+		for (Channel socket : socketChannels) {
+			socket.close();
+		}
+		ioGroup.shutdownGracefully();
+	}
+
+	@Override
+	public ChannelConfig config() {
+		return config;
+	}
+
+	@Override
+	public boolean isOpen() {
+		return open;
+	}
+
+	@Override
+	public boolean isActive() {
+		return active;
+	}
+
+	protected void removeChild(UdpChildChannel child) {
+		children.remove(child.remoteAddress(), child);
+	}
+
+	//datagrams written by child channels are flushed once per batch of socket event loop tasks, so they can go out in a single sendmmsg
+	protected static class SocketWriter {
+
+		protected Channel socket;
+		protected boolean flushScheduled = false;
+		protected final Runnable flushTask = () -> {
+			flushScheduled = false;
+			socket.flush();
+		};
+
+		protected void write(DatagramPacket[] packets) {
+			EventLoop loop = socket.eventLoop();
+			if (loop.inEventLoop()) {
+				write0(packets);
+			} else {
+				loop.execute(() -> write0(packets));
+			}
+		}
+
+		protected void write0(DatagramPacket[] packets) {
+			for (DatagramPacket packet : packets) {
+				socket.write(packet, socket.voidPromise());
+			}
+			//flush task is added after all tasks that are already queued, so it covers their writes too
+			if (!flushScheduled) {
+				flushScheduled = true;
+				socket.eventLoop().execute(flushTask);
+			}
+		}
+
+	}
+
+	protected class ReadHandler extends ChannelInboundHandlerAdapter {
+
+		protected final SocketWriter writer;
+		//child channels that read datagrams directly during current socket read batch, they get read complete once batch ends
+		protected final ArrayList<UdpChildChannel> readChildren = new ArrayList<>();
+
+		protected ReadHandler(SocketWriter writer) {
+			this.writer = writer;
+		}
+
+		@Override
+		public void channelRead(ChannelHandlerContext ctx, Object msg) {
+			DatagramPacket packet = (DatagramPacket) msg;
+			if (!open) {
+				packet.release();
+				return;
+			}
+			UdpChildChannel child = children.get(packet.sender());
+			if (child == null) {
+				child = acceptChild(ctx, packet);
+				if (child == null) {
+					packet.release();
+					return;
+				}
+			}
+			if (child.receive(packet.content())) {
+				readChildren.add(child);
+			}
+		}
+
+		@Override
+		public void channelReadComplete(ChannelHandlerContext ctx) {
+			for (int i = 0; i < readChildren.size(); i++) {
+				readChildren.get(i).readComplete();
+			}
+			readChildren.clear();
+		}
+
+		//returns null if datagram was answered or dropped without creating child channel
+		protected UdpChildChannel acceptChild(ChannelHandlerContext ctx, DatagramPacket packet) {
+			InetSocketAddress sender = packet.sender();
+			ByteBuf data = packet.content();
+			if ((pingresponder != null) && UnconnectedPingResponder.isPing(data)) {
+				ByteBuf pong = pingresponder.createPong(ctx.alloc(), data);
+				if (pong != null) {
+					writer.write(new DatagramPacket[] { new DatagramPacket(pong, sender) });
+					return null;
+				}
+			}
+			if (cookies != null) {
+				try {
+					int packetId = data.getUnsignedByte(data.readerIndex());
+					if (packetId == RakNetConstants.ID_RN_OPEN_CONNECTION_REQUEST_1) {
+						RakNetConnectionRequest1 request = new RakNetConnectionRequest1();
+						request.decode(data.duplicate().skipBytes(1));
+						if (request.getMtu() < RakNetConstants.MIN_MTU) {
+							return null;
+						}
+						RakNetPacket reply = request.getRakNetProtocolVersion() == RakNetInvalidVersion.VALID_VERSION ?
+							new RakNetConnectionReply1(request.getMtu(), cookies.create(sender)) :
+							new RakNetInvalidVersion();
+						ByteBuf buf = ctx.alloc().buffer();
+						buf.writeByte(RakNetPacketRegistry.getId(reply));
+						reply.encode(buf);
+						writer.write(new DatagramPacket[] { new DatagramPacket(buf, sender) });
+						return null;
+					}
+					if (packetId != RakNetConstants.ID_RN_OPEN_CONNECTION_REQUEST_2) {
+						return null;
+					}
+					RakNetConnectionRequest2 request = new RakNetConnectionRequest2();
+					request.decode(data.duplicate().skipBytes(1));
+					if ((request.getMtu() < RakNetConstants.MIN_MTU) || !request.hasCookie() || !cookies.validate(sender, request.getCookie())) {
+						return null;
+					}
+				} catch (RuntimeException e) {
+					//malformed handshake packet
+					return null;
+				}
+			}
+			if ((ratelimiter != null) && !ratelimiter.tryAcquire(sender.getAddress())) {
+				return null;
+			}
+			UdpChildChannel newChild = new UdpChildChannel(ReusePortUdpServerChannel.this, writer, sender);
+			UdpChildChannel child = children.putIfAbsent(sender, newChild);
+			if (child == null) {
+				child = newChild;
+				eventLoop().execute(() -> pipeline().fireChannelRead(newChild).fireChannelReadComplete());
+			}
+			return child;
+		}
+
+	}
+
+}
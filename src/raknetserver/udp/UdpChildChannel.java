@@ -0,0 +1,209 @@
+package raknetserver.udp;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.AbstractChannel;
+import io.netty.channel.ChannelConfig;
+import io.netty.channel.ChannelMetadata;
+import io.netty.channel.ChannelOutboundBuffer;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.DefaultChannelConfig;
+import io.netty.channel.EventLoop;
+import io.netty.channel.socket.DatagramPacket;
+
+//single peer of reuse port server channel
+//channel should be registered to the event loop of the socket that receives its datagrams (see socketEventLoop), then datagrams are read without passing them between threads
+//if it is registered to other event loop, datagrams are passed to it in batches
+public class UdpChildChannel extends AbstractChannel {
+
+	protected static final ChannelMetadata METADATA = new ChannelMetadata(false);
+
+	protected final ChannelConfig config = new DefaultChannelConfig(this);
+	protected final ReusePortUdpServerChannel.SocketWriter writer;
+	protected final InetSocketAddress remote;
+	protected final Queue<ByteBuf> received = new ConcurrentLinkedQueue<>();
+	protected final AtomicBoolean readScheduled = new AtomicBoolean();
+	protected final Runnable readTask = () -> {
+		readScheduled.set(false);
+		if (readReceived()) {
+			pipeline().fireChannelReadComplete();
+		}
+	};
+	protected volatile boolean open = true;
+	protected boolean reading = false;
+	protected boolean readCompletePending = false;
+
+	protected UdpChildChannel(ReusePortUdpServerChannel parent, ReusePortUdpServerChannel.SocketWriter writer, InetSocketAddress remote) {
+		super(parent);
+		this.writer = writer;
+		this.remote = remote;
+	}
+
+	@Override
+	public ReusePortUdpServerChannel parent() {
+		return (ReusePortUdpServerChannel) super.parent();
+	}
+
+	public EventLoop socketEventLoop() {
+		return writer.socket.eventLoop();
+	}
+
+	@Override
+	public InetSocketAddress remoteAddress() {
+		return (InetSocketAddress) super.remoteAddress();
+	}
+
+	//called from socket thread, if channel is registered to socket event loop data is passed to pipeline directly
+	//returns true if read complete has to be fired once socket read batch ends, it is returned only once per batch
+	protected boolean receive(ByteBuf data) {
+		received.add(data);
+		if (!open) {
+			releaseReceived();
+			return false;
+		}
+		if (!isRegistered()) {
+			return false;
+		}
+		if (eventLoop().inEventLoop()) {
+			if (readReceived() && !readCompletePending) {
+				readCompletePending = true;
+				return true;
+			}
+		} else if (readScheduled.compareAndSet(false, true)) {
+			eventLoop().execute(readTask);
+		}
+		return false;
+	}
+
+	protected void readComplete() {
+		readCompletePending = false;
+		if (isOpen()) {
+			pipeline().fireChannelReadComplete();
+		}
+	}
+
+	//returns true if anything was read, read complete is fired by caller
+	protected boolean readReceived() {
+		if (!isOpen()) {
+			releaseReceived();
+			return false;
+		}
+		//read complete event requests next read, which shouldn't start reading again while we are still in it
+		if (reading) {
+			return false;
+		}
+		reading = true;
+		try {
+			ByteBuf data = null;
+			boolean read = false;
+			while ((data = received.poll()) != null) {
+				pipeline().fireChannelRead(data);
+				read = true;
+			}
+			return read;
+		} finally {
+			reading = false;
+		}
+	}
+
+	protected void releaseReceived() {
+		ByteBuf data = null;
+		while ((data = received.poll()) != null) {
+			data.release();
+		}
+	}
+
+	@Override
+	protected AbstractUnsafe newUnsafe() {
+		return new AbstractUnsafe() {
+			@Override
+			public void connect(SocketAddress remoteAddress, SocketAddress localAddress, ChannelPromise promise) {
+				promise.setFailure(new UnsupportedOperationException());
+			}
+		};
+	}
+
+	@Override
+	protected boolean isCompatible(EventLoop loop) {
+		return true;
+	}
+
+	@Override
+	protected SocketAddress localAddress0() {
+		return writer.socket.localAddress();
+	}
+
+	@Override
+	protected SocketAddress remoteAddress0() {
+		return remote;
+	}
+
+	@Override
+	protected void doBind(SocketAddress local) throws Exception {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	protected void doDisconnect() throws Exception {
+		doClose();
+	}
+
+	@Override
+	protected void doClose() throws Exception {
+		open = false;
+		parent().removeChild(this);
+		releaseReceived();
+	}
+
+	@Override
+	protected void doBeginRead() throws Exception {
+		if (readReceived()) {
+			pipeline().fireChannelReadComplete();
+		}
+	}
+
+	@Override
+	protected Object filterOutboundMessage(Object msg) {
+		if (msg instanceof ByteBuf) {
+			return msg;
+		}
+		throw new UnsupportedOperationException("Unsupported message type " + msg.getClass());
+	}
+
+	@Override
+	protected void doWrite(ChannelOutboundBuffer buffer) throws Exception {
+		//whole batch is passed to socket writer at once, in one task if channel is not on socket event loop
+		DatagramPacket[] packets = new DatagramPacket[buffer.size()];
+		for (int i = 0; i < packets.length; i++) {
+			packets[i] = new DatagramPacket(((ByteBuf) buffer.current()).retain(), remote);
+			buffer.remove();
+		}
+		writer.write(packets);
+	}
+
+	@Override
+	public ChannelConfig config() {
+		return config;
+	}
+
+	@Override
+	public ChannelMetadata metadata() {
+		return METADATA;
+	}
+
+	@Override
+	public boolean isOpen() {
+		return open;
+	}
+
+	@Override
+	public boolean isActive() {
+		return open;
+	}
+
+}
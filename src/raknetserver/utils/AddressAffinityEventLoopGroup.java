@@ -0,0 +1,54 @@
+package raknetserver.utils;
+
+import java.net.SocketAddress;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.DefaultEventLoopGroup;
+import io.netty.channel.EventLoop;
+import io.netty.util.concurrent.EventExecutor;
+import raknetserver.udp.UdpChildChannel;
+
+//registers channels to event loop selected by remote address hash, so all pipelines of a single peer always run on the same thread
+public class AddressAffinityEventLoopGroup extends DefaultEventLoopGroup {
+
+	private final EventLoop[] loops;
+
+	public AddressAffinityEventLoopGroup(int threads) {
+		super(threads);
+		loops = new EventLoop[executorCount()];
+		int index = 0;
+		for (EventExecutor executor : this) {
+			loops[index++] = (EventLoop) executor;
+		}
+	}
+
+	public EventLoop next(SocketAddress address) {
+		if (address == null) {
+			return next();
+		}
+		int hash = address.hashCode();
+		hash ^= hash >>> 16;
+		return loops[(hash & Integer.MAX_VALUE) % loops.length];
+	}
+
+	//reuse port child channels go to the loop of the socket that receives their datagrams instead, so datagrams are read on the same thread
+	public EventLoop next(Channel channel) {
+		if (channel instanceof UdpChildChannel) {
+			return ((UdpChildChannel) channel).socketEventLoop();
+		}
+		return next(channel.remoteAddress());
+	}
+
+	@Override
+	public ChannelFuture register(Channel channel) {
+		return next(channel).register(channel);
+	}
+
+	@Override
+	public ChannelFuture register(ChannelPromise promise) {
+		return next(promise.channel()).register(promise);
+	}
+
+}
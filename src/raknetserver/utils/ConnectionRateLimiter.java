@@ -0,0 +1,43 @@
+package raknetserver.utils;
+
+import java.net.InetAddress;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+//limits amount of new connections from single ip in one second
+public class ConnectionRateLimiter {
+
+	protected static final long WINDOW = 1000;
+
+	protected final int maxConnections;
+	protected final ConcurrentHashMap<InetAddress, Window> windows = new ConcurrentHashMap<>();
+	protected volatile long lastCleanup = System.currentTimeMillis();
+
+	public ConnectionRateLimiter(int maxConnections) {
+		this.maxConnections = maxConnections;
+	}
+
+	public boolean tryAcquire(InetAddress address) {
+		long now = System.currentTimeMillis();
+		if ((now - lastCleanup) > WINDOW) {
+			lastCleanup = now;
+			windows.values().removeIf(window -> (now - window.start) > WINDOW);
+		}
+		Window window = windows.computeIfAbsent(address, k -> new Window(now));
+		if ((now - window.start) > WINDOW) {
+			//window may be reset by several threads at once, which only makes limit a bit less strict for a moment
+			window.start = now;
+			window.count.set(0);
+		}
+		return window.count.incrementAndGet() <= maxConnections;
+	}
+
+	protected static class Window {
+		protected volatile long start;
+		protected final AtomicInteger count = new AtomicInteger();
+		protected Window(long start) {
+			this.start = start;
+		}
+	}
+
+}
@@ -4,7 +4,28 @@ public class Constants {
 
 	public static final int MAX_PACKET_LOSS = Integer.parseInt(System.getProperty("raknetserver.maxPacketLoss", "10240"));
 	public static final int MAX_PACKET_SPLITS = Integer.parseInt(System.getProperty("raknetserver.maxPacketSplits", "4096"));
-	public static final int PACKET_RESEND_INTERVAL = Integer.parseInt(System.getProperty("raknetserver.packetResendInterval", "200"));
+	public static final int SPLIT_REASSEMBLY_TIMEOUT = Integer.parseInt(System.getProperty("raknetserver.splitReassemblyTimeout", "30000"));
+	public static final int MAX_SPLIT_BYTES_PER_CONNECTION = Integer.parseInt(System.getProperty("raknetserver.maxSplitBytesPerConnection", "8388608"));
+	public static final long MAX_SPLIT_BYTES_GLOBAL = Long.parseLong(System.getProperty("raknetserver.maxSplitBytesGlobal", "268435456"));
+	public static final int PACKET_RESEND_INITIAL_TIMEOUT = Integer.parseInt(System.getProperty("raknetserver.packetResendInitialTimeout", "200"));
+	public static final int PACKET_RESEND_MIN_TIMEOUT = Integer.parseInt(System.getProperty("raknetserver.packetResendMinTimeout", "20"));
+	public static final int PACKET_RESEND_MAX_TIMEOUT = Integer.parseInt(System.getProperty("raknetserver.packetResendMaxTimeout", "3000"));
+	public static final int PACKET_FLUSH_INTERVAL = Integer.parseInt(System.getProperty("raknetserver.packetFlushInterval", "5"));
+	public static final int RECEIVE_WINDOW_SIZE = Integer.parseInt(System.getProperty("raknetserver.receiveWindowSize", "2048"));
+	public static final int ACK_INTERVAL = Integer.parseInt(System.getProperty("raknetserver.ackInterval", "10"));
+	public static final int TIMER_TICK = Integer.parseInt(System.getProperty("raknetserver.timerTick", "1"));
+	public static final String CONGESTION_CONTROL = System.getProperty("raknetserver.congestionControl", "window");
+	public static final int INITIAL_CONGESTION_WINDOW = Integer.parseInt(System.getProperty("raknetserver.initialCongestionWindow", "16"));
+	public static final int MAX_SEND_QUEUE_BYTES = Integer.parseInt(System.getProperty("raknetserver.maxSendQueueBytes", "8388608"));
+	public static final int MAX_CONGESTION_WINDOW = Integer.parseInt(System.getProperty("raknetserver.maxCongestionWindow", "4194304"));
+	public static final int WORKER_THREADS = Integer.parseInt(System.getProperty("raknetserver.workerThreads", String.valueOf(Runtime.getRuntime().availableProcessors())));
+	public static final boolean HANDSHAKE_COOKIES = Boolean.parseBoolean(System.getProperty("raknetserver.handshakeCookies", "false"));
+	public static final int HANDSHAKE_COOKIE_LIFETIME = Integer.parseInt(System.getProperty("raknetserver.handshakeCookieLifetime", "10000"));
+	public static final int MAX_CONNECTIONS_PER_IP = Integer.parseInt(System.getProperty("raknetserver.maxConnectionsPerIpPerSecond", "0"));
+	public static final int SESSION_TIMEOUT = Integer.parseInt(System.getProperty("raknetserver.sessionTimeout", "30000"));
+	public static final boolean FUSED_PIPELINE = Boolean.parseBoolean(System.getProperty("raknetserver.fusedPipeline", "false"));
+	public static final int PING_CACHE_INTERVAL = Integer.parseInt(System.getProperty("raknetserver.pingCacheInterval", "1000"));
+	public static final String UDP_TRANSPORT = System.getProperty("raknetserver.udpTransport", "default");
 	public static final int UDP_IO_THREADS = Integer.parseInt(System.getProperty("raknetserver.udpIOThreads", "4"));
 
 }
@@ -0,0 +1,59 @@
+package raknetserver.utils;
+
+import java.util.Arrays;
+
+//queue of 24 bit seq id ranges, consecutive ids are merged into the last range
+//ranges never cross the wrap point, so they can be written as raknet ack/nack entries
+public class IntRangeQueue {
+
+	private int[] starts = new int[16];
+	private int[] finishes = new int[16];
+	private int size;
+
+	public void add(int id) {
+		add(id, id);
+	}
+
+	public void add(int idstart, int idfinish) {
+		if (idfinish < idstart) {
+			add(idstart, Utils.SEQ_MASK);
+			add(0, idfinish);
+			return;
+		}
+		if (size > 0) {
+			int last = size - 1;
+			if ((idstart - finishes[last]) == 1) {
+				finishes[last] = idfinish;
+				return;
+			}
+		}
+		if (size == starts.length) {
+			starts = Arrays.copyOf(starts, size << 1);
+			finishes = Arrays.copyOf(finishes, size << 1);
+		}
+		starts[size] = idstart;
+		finishes[size] = idfinish;
+		size++;
+	}
+
+	public int getStart(int index) {
+		return starts[index];
+	}
+
+	public int getFinish(int index) {
+		return finishes[index];
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public void clear() {
+		size = 0;
+	}
+
+}
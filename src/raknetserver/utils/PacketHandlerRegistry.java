@@ -1,21 +1,28 @@
 package raknetserver.utils;
 
-import java.util.HashMap;
+import java.util.function.ToIntFunction;
 
 import io.netty.channel.ChannelHandlerContext;
 
+//handlers are stored by packet id, so dispatch is a single array lookup
 public class PacketHandlerRegistry<TManager, TPacket> {
 
-	@SuppressWarnings("rawtypes")
-	private final HashMap<Class, PacketHandler> registry = new HashMap<>();
+	@SuppressWarnings("unchecked")
+	private final PacketHandler<TManager, TPacket>[] registry = (PacketHandler<TManager, TPacket>[]) new PacketHandler<?, ?>[1 << Byte.SIZE];
+	private final ToIntFunction<TPacket> idFunction;
 
-	public <T extends TPacket> void register(Class<T> packet, PacketHandler<TManager, T> handler) {
-		registry.put(packet, handler);
+	public PacketHandlerRegistry(ToIntFunction<TPacket> idFunction) {
+		this.idFunction = idFunction;
 	}
 
+	//packet id has to be the id of packets of type T, handler type is usually given explicitly: registry.<Packet>register(id, handler)
 	@SuppressWarnings("unchecked")
+	public <T extends TPacket> void register(int packetId, PacketHandler<TManager, T> handler) {
+		registry[packetId] = (PacketHandler<TManager, TPacket>) handler;
+	}
+
 	public void handle(ChannelHandlerContext ctx, TManager manager, TPacket packet) {
-		PacketHandler<TManager, TPacket> handler = registry.get(packet.getClass());
+		PacketHandler<TManager, TPacket> handler = registry[idFunction.applyAsInt(packet)];
 		if (handler == null) {
 			throw new IllegalArgumentException("Handler for packet " + packet.getClass() + " not found");
 		}
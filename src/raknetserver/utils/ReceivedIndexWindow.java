@@ -0,0 +1,78 @@
+package raknetserver.utils;
+
+//bitmap of received 24 bit serial numbers, starting at the lowest one that wasn't received yet
+//unlike sequence window it never forgets a missing number, so it fits numbers that are always delivered eventually (reliable message indexes)
+//numbers that are further ahead than the bitmap capacity make it grow, caller should limit that with getOffset
+public class ReceivedIndexWindow {
+
+	private long[] bits;
+	private int mask;
+	private int lowestMissing = 0;
+
+	public ReceivedIndexWindow(int initialSize) {
+		int capacity = Math.max(Integer.highestOneBit(Math.max(initialSize, 64) - 1) << 1, 64);
+		bits = new long[capacity >> 6];
+		mask = capacity - 1;
+	}
+
+	//distance of the number from the lowest missing one, negative if number was already received
+	public int getOffset(int seq) {
+		return Utils.seqDiff(seq, lowestMissing);
+	}
+
+	//returns false if number was already received
+	public boolean add(int seq) {
+		int offset = getOffset(seq);
+		if (offset < 0) {
+			return false;
+		}
+		if (offset > mask) {
+			grow(offset);
+		}
+		if (get(seq)) {
+			return false;
+		}
+		set(seq);
+		//slots of numbers below lowest missing one are cleared, so they can be reused by numbers one capacity ahead
+		while (get(lowestMissing)) {
+			clear(lowestMissing);
+			lowestMissing = Utils.seqAdd(lowestMissing, 1);
+		}
+		return true;
+	}
+
+	public int getLowestMissing() {
+		return lowestMissing;
+	}
+
+	private void grow(int offset) {
+		long[] oldBits = bits;
+		int oldMask = mask;
+		int capacity = Integer.highestOneBit(offset) << 1;
+		bits = new long[capacity >> 6];
+		mask = capacity - 1;
+		for (int i = 1; i <= oldMask; i++) {
+			int seq = Utils.seqAdd(lowestMissing, i);
+			int index = seq & oldMask;
+			if ((oldBits[index >> 6] & (1L << index)) != 0) {
+				set(seq);
+			}
+		}
+	}
+
+	private boolean get(int seq) {
+		int index = seq & mask;
+		return (bits[index >> 6] & (1L << index)) != 0;
+	}
+
+	private void set(int seq) {
+		int index = seq & mask;
+		bits[index >> 6] |= 1L << index;
+	}
+
+	private void clear(int seq) {
+		int index = seq & mask;
+		bits[index >> 6] &= ~(1L << index);
+	}
+
+}
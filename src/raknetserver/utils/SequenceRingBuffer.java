@@ -0,0 +1,108 @@
+package raknetserver.utils;
+
+import java.util.function.Consumer;
+
+//ring buffer of elements indexed by consecutive sequence numbers, element for sequence is stored at seq & mask
+//elements are added in sequence order, removed in any order, buffer grows if span between oldest and newest element doesn't fit
+public class SequenceRingBuffer<T> {
+
+	private Object[] elements;
+	private int mask;
+	private int head; //oldest sequence that can still hold element
+	private int tail; //next sequence to add
+	private int size;
+
+	public SequenceRingBuffer(int initialCapacity) {
+		int capacity = Integer.highestOneBit(Math.max(initialCapacity, 2) - 1) << 1;
+		elements = new Object[capacity];
+		mask = capacity - 1;
+	}
+
+	public void add(int seq, T element) {
+		if (size == 0) {
+			head = seq;
+			tail = seq;
+		}
+		if (seq != tail) {
+			throw new IllegalArgumentException("Sequence " + seq + " is not next sequence " + tail);
+		}
+		if ((tail - head) == elements.length) {
+			grow();
+		}
+		elements[seq & mask] = element;
+		tail++;
+		size++;
+	}
+
+	@SuppressWarnings("unchecked")
+	public T get(int seq) {
+		if (!contains(seq)) {
+			return null;
+		}
+		return (T) elements[seq & mask];
+	}
+
+	@SuppressWarnings("unchecked")
+	public T remove(int seq) {
+		if (!contains(seq)) {
+			return null;
+		}
+		int index = seq & mask;
+		T element = (T) elements[index];
+		if (element == null) {
+			return null;
+		}
+		elements[index] = null;
+		size--;
+		//move head to the oldest element that is still present
+		while ((head != tail) && (elements[head & mask] == null)) {
+			head++;
+		}
+		return element;
+	}
+
+	public boolean contains(int seq) {
+		return ((seq - head) >= 0) && ((seq - tail) < 0);
+	}
+
+	//oldest sequence, iteration from it to next sequence visits elements in sequence order (removed ones are null)
+	public int getFirstSequence() {
+		return head;
+	}
+
+	public int getNextSequence() {
+		return tail;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	@SuppressWarnings("unchecked")
+	public void clear(Consumer<T> consumer) {
+		for (int seq = head; seq != tail; seq++) {
+			int index = seq & mask;
+			if (elements[index] != null) {
+				consumer.accept((T) elements[index]);
+				elements[index] = null;
+			}
+		}
+		head = tail;
+		size = 0;
+	}
+
+	private void grow() {
+		Object[] newElements = new Object[elements.length << 1];
+		int newMask = newElements.length - 1;
+		for (int seq = head; seq != tail; seq++) {
+			newElements[seq & newMask] = elements[seq & mask];
+		}
+		elements = newElements;
+		mask = newMask;
+	}
+
+}
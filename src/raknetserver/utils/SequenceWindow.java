@@ -0,0 +1,79 @@
+package raknetserver.utils;
+
+import java.util.Arrays;
+
+//sliding bitmap of received 24 bit serial numbers, ending at the highest received one
+//numbers older than the window size are treated as already received
+public class SequenceWindow {
+
+	private final long[] bits;
+	private final int mask;
+	private int highest = -1;
+
+	public SequenceWindow(int size) {
+		int capacity = Math.max(Integer.highestOneBit(Math.max(size, 64) - 1) << 1, 64);
+		bits = new long[capacity >> 6];
+		mask = capacity - 1;
+	}
+
+	//returns false if number was already received
+	public boolean add(int seq) {
+		int diff = Utils.seqDiff(seq, highest);
+		if (diff > 0) {
+			//numbers between old highest and new one are not received yet
+			if (diff > mask) {
+				Arrays.fill(bits, 0);
+			} else {
+				for (int i = 1; i < diff; i++) {
+					clear(highest + i);
+				}
+			}
+			highest = seq;
+			set(seq);
+			return true;
+		}
+		if (-diff > mask) {
+			return false;
+		}
+		if (get(seq)) {
+			return false;
+		}
+		set(seq);
+		return true;
+	}
+
+	public boolean contains(int seq) {
+		int diff = Utils.seqDiff(seq, highest);
+		if (diff > 0) {
+			return false;
+		}
+		if (-diff > mask) {
+			return true;
+		}
+		return get(seq);
+	}
+
+	public int getHighest() {
+		return highest;
+	}
+
+	public int getSize() {
+		return mask + 1;
+	}
+
+	private boolean get(int seq) {
+		int index = seq & mask;
+		return (bits[index >> 6] & (1L << index)) != 0;
+	}
+
+	private void set(int seq) {
+		int index = seq & mask;
+		bits[index >> 6] |= 1L << index;
+	}
+
+	private void clear(int seq) {
+		int index = seq & mask;
+		bits[index >> 6] &= ~(1L << index);
+	}
+
+}
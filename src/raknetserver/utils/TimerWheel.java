@@ -0,0 +1,191 @@
+package raknetserver.utils;
+
+import java.util.IdentityHashMap;
+import java.util.concurrent.TimeUnit;
+
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.FastThreadLocal;
+import io.netty.util.concurrent.ScheduledFuture;
+import io.netty.util.internal.logging.InternalLogger;
+import io.netty.util.internal.logging.InternalLoggerFactory;
+
+//hashed timer wheel shared by all channels of single event loop
+//event loop is woken up once per tick only while there are scheduled timers, and scheduling or cancelling a timer doesn't allocate
+//timers that expire after more than one wheel turn (like read timeouts) are scheduled to executor directly, so they don't keep the wheel ticking
+//that allocates, but such timers are rescheduled rarely
+public class TimerWheel {
+
+	private static final InternalLogger logger = InternalLoggerFactory.getInstance(TimerWheel.class);
+
+	private static final int WHEEL_SIZE = 512;
+	private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+
+	//event loop thread normally runs only one executor, so there is usually a single wheel per thread
+	private static final FastThreadLocal<IdentityHashMap<EventExecutor, TimerWheel>> wheels = new FastThreadLocal<IdentityHashMap<EventExecutor, TimerWheel>>() {
+		@Override
+		protected IdentityHashMap<EventExecutor, TimerWheel> initialValue() {
+			return new IdentityHashMap<>();
+		}
+	};
+
+	//should be called from executor thread
+	public static TimerWheel get(EventExecutor executor) {
+		return wheels.get().computeIfAbsent(executor, TimerWheel::new);
+	}
+
+	private final EventExecutor executor;
+	private final long tickNanos = TimeUnit.MILLISECONDS.toNanos(Constants.TIMER_TICK);
+	private final long farNanos = tickNanos * WHEEL_SIZE;
+	private final long startTime = System.nanoTime();
+	private final Timer[] buckets = new Timer[WHEEL_SIZE];
+	private long currentTick = 0;
+	private int count = 0;
+	private ScheduledFuture<?> tickTask;
+
+	private TimerWheel(EventExecutor executor) {
+		this.executor = executor;
+	}
+
+	protected void schedule(Timer timer, long delayNanos) {
+		cancel(timer);
+		if (delayNanos >= farNanos) {
+			timer.state = Timer.STATE_SCHEDULED;
+			timer.farFuture = executor.schedule(timer.farTask, delayNanos, TimeUnit.NANOSECONDS);
+			return;
+		}
+		long now = System.nanoTime();
+		//wheel wasn't ticking while there were no timers, so skip the ticks that passed since then
+		if (tickTask == null) {
+			currentTick = (now - startTime) / tickNanos;
+		}
+		//timer never expires earlier than requested, so it is rounded up to next tick
+		long deadlineTick = Math.max(currentTick + 1, (now - startTime + delayNanos + tickNanos - 1) / tickNanos);
+		timer.deadlineTick = deadlineTick;
+		timer.state = Timer.STATE_SCHEDULED;
+		int bucket = (int) (deadlineTick & WHEEL_MASK);
+		timer.bucket = bucket;
+		timer.prev = null;
+		timer.next = buckets[bucket];
+		if (timer.next != null) {
+			timer.next.prev = timer;
+		}
+		buckets[bucket] = timer;
+		count++;
+		if (tickTask == null) {
+			tickTask = executor.scheduleAtFixedRate(this::tick, tickNanos, tickNanos, TimeUnit.NANOSECONDS);
+		}
+	}
+
+	protected void cancel(Timer timer) {
+		if (timer.farFuture != null) {
+			timer.farFuture.cancel(false);
+			timer.farFuture = null;
+		} else if (timer.state == Timer.STATE_SCHEDULED) {
+			unlink(timer);
+		}
+		timer.state = Timer.STATE_IDLE;
+	}
+
+	private void expireFar(Timer timer) {
+		timer.farFuture = null;
+		if (timer.state == Timer.STATE_SCHEDULED) {
+			timer.state = Timer.STATE_IDLE;
+			run(timer);
+		}
+	}
+
+	private void run(Timer timer) {
+		try {
+			timer.task.run();
+		} catch (Throwable t) {
+			logger.warn("Timer task raised an exception", t);
+		}
+	}
+
+	private void unlink(Timer timer) {
+		if (timer.prev != null) {
+			timer.prev.next = timer.next;
+		} else {
+			buckets[timer.bucket] = timer.next;
+		}
+		if (timer.next != null) {
+			timer.next.prev = timer.prev;
+		}
+		timer.prev = null;
+		timer.next = null;
+		count--;
+	}
+
+	private void tick() {
+		long targetTick = (System.nanoTime() - startTime) / tickNanos;
+		while (currentTick < targetTick) {
+			currentTick++;
+			//expired timers are unlinked first, because running timer tasks may schedule or cancel other timers of the same bucket
+			Timer expired = null;
+			Timer timer = buckets[(int) (currentTick & WHEEL_MASK)];
+			while (timer != null) {
+				Timer next = timer.next;
+				if (timer.deadlineTick <= currentTick) {
+					unlink(timer);
+					timer.state = Timer.STATE_EXPIRING;
+					timer.nextExpired = expired;
+					expired = timer;
+				}
+				timer = next;
+			}
+			while (expired != null) {
+				Timer next = expired.nextExpired;
+				expired.nextExpired = null;
+				//timer could be cancelled or scheduled again by task of other expired timer
+				if (expired.state == Timer.STATE_EXPIRING) {
+					expired.state = Timer.STATE_IDLE;
+					run(expired);
+				}
+				expired = next;
+			}
+		}
+		if ((count == 0) && (tickTask != null)) {
+			tickTask.cancel(false);
+			tickTask = null;
+		}
+	}
+
+	//reusable timer, should be created and used only from event loop thread
+	public static class Timer {
+
+		private static final int STATE_IDLE = 0;
+		private static final int STATE_SCHEDULED = 1;
+		private static final int STATE_EXPIRING = 2;
+
+		private final TimerWheel wheel;
+		private final Runnable task;
+		private int state = STATE_IDLE;
+		private long deadlineTick;
+		private int bucket;
+		private Timer prev;
+		private Timer next;
+		private Timer nextExpired;
+		private final Runnable farTask;
+		private ScheduledFuture<?> farFuture;
+
+		public Timer(EventExecutor executor, Runnable task) {
+			this.wheel = TimerWheel.get(executor);
+			this.task = task;
+			this.farTask = () -> wheel.expireFar(this);
+		}
+
+		public void schedule(long delay, TimeUnit unit) {
+			wheel.schedule(this, unit.toNanos(delay));
+		}
+
+		public void cancel() {
+			wheel.cancel(this);
+		}
+
+		public boolean isScheduled() {
+			return state == STATE_SCHEDULED;
+		}
+
+	}
+
+}
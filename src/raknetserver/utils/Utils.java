@@ -4,6 +4,18 @@ import io.netty.buffer.ByteBuf;
 
 public class Utils {
 
+	//seq ids, message indexes and order indexes are 24 bit serial numbers that wrap
+	public static final int SEQ_MASK = 0xFFFFFF;
+
+	//signed distance between two 24 bit serial numbers, positive if seq is after base
+	public static int seqDiff(int seq, int base) {
+		return ((seq - base) << 8) >> 8;
+	}
+
+	public static int seqAdd(int seq, int delta) {
+		return (seq + delta) & SEQ_MASK;
+	}
+
 	public static byte[] readBytes(ByteBuf from) {
 		return readBytes(from, from.readableBytes());
 	}
@@ -0,0 +1,63 @@
+package raknetserver.packet;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+public class EncapsulatedPacketTest {
+
+	private static EncapsulatedPacket roundtrip(EncapsulatedPacket packet) {
+		ByteBuf buf = Unpooled.buffer();
+		try {
+			packet.encode(buf);
+			assertEquals(packet.getEncodedSize(), buf.readableBytes());
+			EncapsulatedPacket decoded = new EncapsulatedPacket();
+			decoded.decode(buf);
+			assertEquals(0, buf.readableBytes());
+			return decoded;
+		} finally {
+			buf.release();
+			packet.release();
+		}
+	}
+
+	@Test
+	public void testReliableSequencedLayout() {
+		EncapsulatedPacket packet = new EncapsulatedPacket(Unpooled.wrappedBuffer(new byte[] {7}), Reliability.RELIABLE_SEQUENCED.getId(), 10, 20, 3, 30);
+		ByteBuf buf = Unpooled.buffer();
+		packet.encode(buf);
+		//flags, length, message index, sequence index, order index, order channel, data
+		assertEquals(3 + 3 + 3 + 3 + 1 + 1, buf.readableBytes());
+		assertEquals(10, RakNetDataSerializer.readTriad(buf.skipBytes(3)));
+		assertEquals(20, RakNetDataSerializer.readTriad(buf));
+		assertEquals(30, RakNetDataSerializer.readTriad(buf));
+		assertEquals(3, buf.readUnsignedByte());
+		buf.release();
+		packet.release();
+	}
+
+	@Test
+	public void testSequencedRoundtrip() {
+		EncapsulatedPacket decoded = roundtrip(new EncapsulatedPacket(Unpooled.wrappedBuffer(new byte[] {1, 2}), Reliability.UNRELIABLE_SEQUENCED.getId(), 0, 5, 2, 9));
+		assertEquals(5, decoded.getSequenceIndex());
+		assertEquals(9, decoded.getOrderIndex());
+		assertEquals(2, decoded.getOrderChannel());
+		assertEquals(2, decoded.getDataSize());
+		decoded.release();
+	}
+
+	@Test
+	public void testOrderedRoundtrip() {
+		EncapsulatedPacket decoded = roundtrip(new EncapsulatedPacket(Unpooled.wrappedBuffer(new byte[] {1}), Reliability.RELIABLE_ORDERED.getId(), 4, 0, 1, 6, 3, 2, 1));
+		assertEquals(4, decoded.getMessageIndex());
+		assertEquals(6, decoded.getOrderIndex());
+		assertEquals(3, decoded.getSplitId());
+		assertEquals(2, decoded.getSplitCount());
+		assertEquals(1, decoded.getSplitIndex());
+		decoded.release();
+	}
+
+}
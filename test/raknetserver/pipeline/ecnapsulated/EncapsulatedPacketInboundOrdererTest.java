@@ -0,0 +1,85 @@
+package raknetserver.pipeline.ecnapsulated;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import raknetserver.packet.EncapsulatedPacket;
+import raknetserver.packet.Reliability;
+
+public class EncapsulatedPacketInboundOrdererTest {
+
+	private static List<Integer> order(EncapsulatedPacketInboundOrderer orderer, int... orderIndexes) {
+		List<Integer> delivered = new ArrayList<>();
+		List<Object> list = new ArrayList<>();
+		for (int orderIndex : orderIndexes) {
+			//pooled packets, so a packet that is read after release sees reset fields
+			EncapsulatedPacket packet = EncapsulatedPacket.newInstance(Unpooled.buffer(1).writeByte(orderIndex), Reliability.RELIABLE_ORDERED.getId(), orderIndex, 0, 0, orderIndex);
+			try {
+				orderer.order(packet, list);
+			} finally {
+				packet.release();
+			}
+			for (Object data : list) {
+				delivered.add((int) ((ByteBuf) data).readUnsignedByte());
+				((ByteBuf) data).release();
+			}
+			list.clear();
+		}
+		return delivered;
+	}
+
+	@Test
+	public void testInOrder() {
+		EncapsulatedPacketInboundOrderer orderer = new EncapsulatedPacketInboundOrderer();
+		assertEquals(Arrays.asList(0, 1, 2, 3), order(orderer, 0, 1, 2, 3));
+	}
+
+	@Test
+	public void testGapFill() {
+		EncapsulatedPacketInboundOrderer orderer = new EncapsulatedPacketInboundOrderer();
+		assertEquals(Arrays.asList(0, 1, 2, 3), order(orderer, 1, 2, 3, 0));
+		assertEquals(Arrays.asList(4, 5, 6), order(orderer, 6, 5, 4));
+		orderer.clear();
+	}
+
+	private static boolean sequenced(EncapsulatedPacketInboundOrderer orderer, int orderIndex, int sequenceIndex) {
+		List<Object> list = new ArrayList<>();
+		EncapsulatedPacket packet = EncapsulatedPacket.newInstance(Unpooled.buffer(1).writeByte(0), Reliability.UNRELIABLE_SEQUENCED.getId(), 0, sequenceIndex, 0, orderIndex);
+		try {
+			orderer.order(packet, list);
+		} finally {
+			packet.release();
+		}
+		list.forEach(data -> ((ByteBuf) data).release());
+		return !list.isEmpty();
+	}
+
+	@Test
+	public void testSequencedLatestWins() {
+		EncapsulatedPacketInboundOrderer orderer = new EncapsulatedPacketInboundOrderer();
+		assertTrue(sequenced(orderer, 0, 0));
+		assertTrue(sequenced(orderer, 0, 2));
+		assertFalse(sequenced(orderer, 0, 1));
+		assertFalse(sequenced(orderer, 0, 2));
+		//sequence index restarts once ordered packet was sent on the channel
+		assertTrue(sequenced(orderer, 1, 0));
+		assertFalse(sequenced(orderer, 0, 3));
+	}
+
+	@Test
+	public void testDuplicates() {
+		EncapsulatedPacketInboundOrderer orderer = new EncapsulatedPacketInboundOrderer();
+		assertEquals(Arrays.asList(0, 1, 2), order(orderer, 2, 2, 0, 0, 1, 2));
+		orderer.clear();
+	}
+
+}
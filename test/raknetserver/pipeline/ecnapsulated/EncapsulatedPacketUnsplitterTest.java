@@ -0,0 +1,75 @@
+package raknetserver.pipeline.ecnapsulated;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import org.junit.After;
+import org.junit.Test;
+
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.DefaultEventLoop;
+import io.netty.handler.codec.DecoderException;
+import raknetserver.packet.EncapsulatedPacket;
+import raknetserver.packet.Reliability;
+
+public class EncapsulatedPacketUnsplitterTest {
+
+	private final DefaultEventLoop executor = new DefaultEventLoop();
+	private final EncapsulatedPacketUnsplitter unsplitter = new EncapsulatedPacketUnsplitter();
+
+	@After
+	public void tearDown() {
+		unsplitter.clear();
+		executor.shutdownGracefully();
+	}
+
+	private EncapsulatedPacket unsplit(int splitCount, int splitIndex, int value) {
+		EncapsulatedPacket packet = EncapsulatedPacket.newInstance(Unpooled.buffer(1).writeByte(value), Reliability.RELIABLE.getId(), 0, 0, 0, 0, 1, splitCount, splitIndex);
+		try {
+			return unsplitter.unsplit(executor, ByteBufAllocator.DEFAULT, packet);
+		} finally {
+			packet.release();
+		}
+	}
+
+	@Test
+	public void testUnsplit() {
+		assertNull(unsplit(3, 2, 2));
+		assertNull(unsplit(3, 0, 0));
+		assertNull(unsplit(3, 0, 0));
+		EncapsulatedPacket full = unsplit(3, 1, 1);
+		assertNotNull(full);
+		try {
+			assertEquals(3, full.getData().readableBytes());
+			assertEquals(0, full.getData().readByte());
+			assertEquals(1, full.getData().readByte());
+			assertEquals(2, full.getData().readByte());
+		} finally {
+			full.release();
+		}
+		assertEquals(0, EncapsulatedPacketUnsplitter.getGlobalBufferedBytes());
+	}
+
+	@Test(expected = DecoderException.class)
+	public void testZeroSplitCount() {
+		unsplit(0, 0, 0);
+	}
+
+	@Test(expected = DecoderException.class)
+	public void testNegativeSplitCount() {
+		unsplit(-5, 0, 0);
+	}
+
+	@Test(expected = DecoderException.class)
+	public void testSplitIndexOutOfRange() {
+		unsplit(2, 2, 0);
+	}
+
+	@Test(expected = DecoderException.class)
+	public void testNegativeSplitIndex() {
+		unsplit(2, -1, 0);
+	}
+
+}
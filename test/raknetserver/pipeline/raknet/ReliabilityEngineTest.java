@@ -0,0 +1,107 @@
+package raknetserver.pipeline.raknet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Test;
+
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.DefaultEventLoop;
+import io.netty.channel.embedded.EmbeddedChannel;
+import raknetserver.packet.EncapsulatedPacket;
+import raknetserver.packet.RakNetConstants;
+import raknetserver.packet.raknet.RakNetPacket;
+import raknetserver.packet.raknet.RakNetReliability;
+import raknetserver.packet.raknet.RakNetReliability.RakNetACK;
+
+public class ReliabilityEngineTest {
+
+	private final DefaultEventLoop executor = new DefaultEventLoop();
+	private final EmbeddedChannel channel = new EmbeddedChannel();
+
+	@After
+	public void tearDown() {
+		channel.finishAndReleaseAll();
+		executor.shutdownGracefully();
+	}
+
+	private class TestEngine extends ReliabilityEngine {
+
+		private final int mtu;
+		private final List<RakNetPacket> written = new ArrayList<>();
+
+		private TestEngine(int mtu) {
+			super(executor);
+			this.mtu = mtu;
+		}
+
+		@Override
+		protected int getMtu() {
+			return mtu;
+		}
+
+		@Override
+		protected void writePacket(RakNetPacket packet, ChannelPromise promise) {
+			written.add(packet);
+		}
+
+		@Override
+		protected ChannelPromise voidPromise() {
+			return channel.voidPromise();
+		}
+
+		@Override
+		protected void flushPackets() {
+		}
+
+		@Override
+		protected void readEncapsulatedPacket(EncapsulatedPacket packet) {
+		}
+
+		@Override
+		protected void close(Throwable cause) {
+		}
+
+		//returns entry counts of written acks
+		private List<Integer> sendAcks(int ranges) {
+			for (int i = 0; i < ranges; i++) {
+				ackQueue.add(i * 10, (i * 10) + 1);
+			}
+			sendAcks();
+			List<Integer> counts = new ArrayList<>();
+			for (RakNetPacket packet : written) {
+				RakNetReliability ack = (RakNetReliability) packet;
+				assertTrue(ack instanceof RakNetACK);
+				counts.add(ack.getEntryCount());
+				ack.release();
+			}
+			written.clear();
+			return counts;
+		}
+
+	}
+
+	@Test
+	public void testAckChunking() {
+		//room for two entries
+		TestEngine engine = new TestEngine(RakNetConstants.UDP_IP_HEADER_SIZE + 3 + (7 * 2));
+		assertEquals(2, RakNetReliability.getMaxEntries(engine.getMaxDatagramSize()));
+		assertEquals(Arrays.asList(2, 2, 1), engine.sendAcks(5));
+		assertTrue(engine.ackQueue.isEmpty());
+	}
+
+	@Test
+	public void testSmallMtuDrainsQueue() {
+		//no room for entries at all, but queue is still drained one entry per packet
+		TestEngine engine = new TestEngine(RakNetConstants.UDP_IP_HEADER_SIZE + 2);
+		assertEquals(0, RakNetReliability.getMaxEntries(engine.getMaxDatagramSize()));
+		assertEquals(Arrays.asList(1, 1, 1), engine.sendAcks(3));
+		assertTrue(engine.ackQueue.isEmpty());
+	}
+
+}
@@ -0,0 +1,51 @@
+package raknetserver.pipeline.raknet;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class RetransmissionTimeoutTest {
+
+	private static long ms(long millis) {
+		return TimeUnit.MILLISECONDS.toNanos(millis);
+	}
+
+	@Test
+	public void testSamples() {
+		RetransmissionTimeout rto = new RetransmissionTimeout();
+		assertEquals(-1, rto.getSRTT());
+		assertEquals(ms(200), rto.getRTO());
+		rto.addSample(ms(100));
+		assertEquals(ms(100), rto.getSRTT());
+		assertEquals(ms(50), rto.getRTTVar());
+		assertEquals(ms(300), rto.getRTO());
+		rto.addSample(ms(100));
+		assertEquals(ms(100), rto.getSRTT());
+		assertEquals(ms(150) / 4, rto.getRTTVar());
+		assertEquals(ms(250), rto.getRTO());
+	}
+
+	@Test
+	public void testBounds() {
+		RetransmissionTimeout rto = new RetransmissionTimeout();
+		rto.addSample(ms(1));
+		assertEquals(RetransmissionTimeout.MIN_RTO, rto.getRTO());
+		rto = new RetransmissionTimeout();
+		rto.addSample(ms(5000));
+		assertEquals(RetransmissionTimeout.MAX_RTO, rto.getRTO());
+	}
+
+	@Test
+	public void testBackoff() {
+		RetransmissionTimeout rto = new RetransmissionTimeout();
+		assertEquals(ms(200), rto.getResendTimeout(0));
+		assertEquals(ms(400), rto.getResendTimeout(1));
+		assertEquals(ms(800), rto.getResendTimeout(2));
+		assertEquals(RetransmissionTimeout.MAX_RTO, rto.getResendTimeout(5));
+		//shift is limited, so timeout doesn't overflow after many resends
+		assertEquals(RetransmissionTimeout.MAX_RTO, rto.getResendTimeout(100));
+	}
+
+}
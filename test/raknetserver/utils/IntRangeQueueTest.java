@@ -0,0 +1,56 @@
+package raknetserver.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class IntRangeQueueTest {
+
+	@Test
+	public void testMerge() {
+		IntRangeQueue queue = new IntRangeQueue();
+		assertTrue(queue.isEmpty());
+		queue.add(1);
+		queue.add(2);
+		queue.add(3, 5);
+		queue.add(7);
+		queue.add(8);
+		queue.add(6);
+		assertEquals(3, queue.size());
+		assertEquals(1, queue.getStart(0));
+		assertEquals(5, queue.getFinish(0));
+		assertEquals(7, queue.getStart(1));
+		assertEquals(8, queue.getFinish(1));
+		assertEquals(6, queue.getStart(2));
+		assertEquals(6, queue.getFinish(2));
+		queue.clear();
+		assertTrue(queue.isEmpty());
+	}
+
+	@Test
+	public void testGrow() {
+		IntRangeQueue queue = new IntRangeQueue();
+		for (int i = 0; i < 100; i++) {
+			queue.add(i * 2);
+		}
+		assertEquals(100, queue.size());
+		for (int i = 0; i < 100; i++) {
+			assertEquals(i * 2, queue.getStart(i));
+			assertEquals(i * 2, queue.getFinish(i));
+		}
+	}
+
+	@Test
+	public void testWrap() {
+		IntRangeQueue queue = new IntRangeQueue();
+		queue.add(Utils.SEQ_MASK - 1, 1);
+		queue.add(2);
+		assertEquals(2, queue.size());
+		assertEquals(Utils.SEQ_MASK - 1, queue.getStart(0));
+		assertEquals(Utils.SEQ_MASK, queue.getFinish(0));
+		assertEquals(0, queue.getStart(1));
+		assertEquals(2, queue.getFinish(1));
+	}
+
+}
@@ -0,0 +1,52 @@
+package raknetserver.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class ReceivedIndexWindowTest {
+
+	@Test
+	public void testDuplicates() {
+		ReceivedIndexWindow window = new ReceivedIndexWindow(64);
+		assertTrue(window.add(0));
+		assertFalse(window.add(0));
+		assertTrue(window.add(2));
+		assertFalse(window.add(2));
+		assertEquals(1, window.getLowestMissing());
+		assertTrue(window.add(1));
+		assertEquals(3, window.getLowestMissing());
+		assertFalse(window.add(1));
+	}
+
+	@Test
+	public void testLateResendAfterManyNewerIndexes() {
+		ReceivedIndexWindow window = new ReceivedIndexWindow(64);
+		for (int i = 1; i <= 5000; i++) {
+			assertTrue(window.add(i));
+		}
+		assertEquals(0, window.getLowestMissing());
+		assertEquals(5000, window.getOffset(5000));
+		assertTrue(window.add(0));
+		assertEquals(5001, window.getLowestMissing());
+		for (int i = 0; i <= 5000; i++) {
+			assertFalse(window.add(i));
+		}
+	}
+
+	@Test
+	public void testWrap() {
+		ReceivedIndexWindow window = new ReceivedIndexWindow(64);
+		for (int i = 0; i < (Utils.SEQ_MASK + 100); i++) {
+			assertTrue(window.add(i & Utils.SEQ_MASK));
+		}
+		assertEquals(99, window.getLowestMissing());
+		assertFalse(window.add(Utils.SEQ_MASK));
+		assertTrue(window.add(100));
+		assertTrue(window.add(99));
+		assertEquals(101, window.getLowestMissing());
+	}
+
+}
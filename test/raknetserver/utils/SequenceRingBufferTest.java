@@ -0,0 +1,88 @@
+package raknetserver.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class SequenceRingBufferTest {
+
+	@Test
+	public void testGrow() {
+		SequenceRingBuffer<Integer> buffer = new SequenceRingBuffer<>(4);
+		for (int i = 0; i < 10; i++) {
+			buffer.add(i, i);
+		}
+		assertEquals(10, buffer.size());
+		for (int i = 0; i < 10; i++) {
+			assertEquals(Integer.valueOf(i), buffer.get(i));
+		}
+		assertNull(buffer.get(10));
+		assertEquals(0, buffer.getFirstSequence());
+		assertEquals(10, buffer.getNextSequence());
+	}
+
+	@Test
+	public void testRemove() {
+		SequenceRingBuffer<Integer> buffer = new SequenceRingBuffer<>(4);
+		for (int i = 0; i < 4; i++) {
+			buffer.add(i, i);
+		}
+		assertEquals(Integer.valueOf(1), buffer.remove(1));
+		assertNull(buffer.remove(1));
+		assertEquals(0, buffer.getFirstSequence());
+		assertEquals(Integer.valueOf(0), buffer.remove(0));
+		assertEquals(2, buffer.getFirstSequence());
+		assertFalse(buffer.contains(0));
+		assertEquals(2, buffer.size());
+		//head moved, so there is room for next elements without growing
+		buffer.add(4, 4);
+		buffer.add(5, 5);
+		for (int i = 2; i < 6; i++) {
+			assertEquals(Integer.valueOf(i), buffer.get(i));
+		}
+	}
+
+	@Test
+	public void testWrap() {
+		SequenceRingBuffer<Integer> buffer = new SequenceRingBuffer<>(2);
+		int start = Integer.MAX_VALUE - 2;
+		for (int i = 0; i < 8; i++) {
+			buffer.add(start + i, i);
+		}
+		for (int i = 0; i < 8; i++) {
+			assertTrue(buffer.contains(start + i));
+			assertEquals(Integer.valueOf(i), buffer.get(start + i));
+		}
+		assertFalse(buffer.contains(start - 1));
+		assertFalse(buffer.contains(start + 8));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testAddOutOfOrder() {
+		SequenceRingBuffer<Integer> buffer = new SequenceRingBuffer<>(4);
+		buffer.add(0, 0);
+		buffer.add(2, 2);
+	}
+
+	@Test
+	public void testClear() {
+		SequenceRingBuffer<Integer> buffer = new SequenceRingBuffer<>(4);
+		for (int i = 0; i < 5; i++) {
+			buffer.add(i, i);
+		}
+		buffer.remove(2);
+		List<Integer> cleared = new ArrayList<>();
+		buffer.clear(cleared::add);
+		assertEquals(Arrays.asList(0, 1, 3, 4), cleared);
+		assertTrue(buffer.isEmpty());
+		assertNull(buffer.get(0));
+	}
+
+}
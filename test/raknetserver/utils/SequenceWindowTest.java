@@ -0,0 +1,51 @@
+package raknetserver.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class SequenceWindowTest {
+
+	@Test
+	public void testDuplicates() {
+		SequenceWindow window = new SequenceWindow(64);
+		assertTrue(window.add(0));
+		assertFalse(window.add(0));
+		assertTrue(window.add(2));
+		assertFalse(window.contains(1));
+		assertTrue(window.add(1));
+		assertFalse(window.add(1));
+		assertEquals(2, window.getHighest());
+	}
+
+	@Test
+	public void testOutsideWindow() {
+		SequenceWindow window = new SequenceWindow(64);
+		assertEquals(64, window.getSize());
+		assertTrue(window.add(0));
+		assertTrue(window.add(1000));
+		//jump clears bits that were set by older numbers
+		assertFalse(window.contains(1000 - 64 + 1));
+		assertTrue(window.add(1000 - 64 + 1));
+		//numbers older than window are treated as received
+		assertTrue(window.contains(10));
+		assertFalse(window.add(10));
+	}
+
+	@Test
+	public void testWrap() {
+		SequenceWindow window = new SequenceWindow(64);
+		for (int i = Utils.SEQ_MASK - 10; i <= Utils.SEQ_MASK; i++) {
+			assertTrue(window.add(i));
+		}
+		assertTrue(window.add(1));
+		assertEquals(1, window.getHighest());
+		assertTrue(window.contains(Utils.SEQ_MASK));
+		assertFalse(window.add(Utils.SEQ_MASK));
+		assertFalse(window.contains(0));
+		assertTrue(window.add(0));
+	}
+
+}
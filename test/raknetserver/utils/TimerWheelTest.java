@@ -0,0 +1,92 @@
+package raknetserver.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+import io.netty.channel.DefaultEventLoop;
+import raknetserver.utils.TimerWheel.Timer;
+
+public class TimerWheelTest {
+
+	private final DefaultEventLoop executor = new DefaultEventLoop();
+	private final AtomicInteger runs = new AtomicInteger();
+	private final CountDownLatch fired = new CountDownLatch(1);
+
+	@After
+	public void tearDown() {
+		executor.shutdownGracefully();
+	}
+
+	//timers should be used only from executor thread
+	private Timer schedule(long delay, TimeUnit unit) throws Exception {
+		return executor.submit(() -> {
+			Timer timer = new Timer(executor, () -> {
+				runs.incrementAndGet();
+				fired.countDown();
+			});
+			timer.schedule(delay, unit);
+			return timer;
+		}).get();
+	}
+
+	private boolean isScheduled(Timer timer) throws Exception {
+		return executor.submit(timer::isScheduled).get();
+	}
+
+	@Test
+	public void testNear() throws Exception {
+		long start = System.nanoTime();
+		Timer timer = schedule(5, TimeUnit.MILLISECONDS);
+		assertTrue(fired.await(1, TimeUnit.SECONDS));
+		assertTrue((System.nanoTime() - start) >= TimeUnit.MILLISECONDS.toNanos(5));
+		assertFalse(isScheduled(timer));
+		assertEquals(1, runs.get());
+	}
+
+	@Test
+	public void testCancel() throws Exception {
+		Timer timer = schedule(10, TimeUnit.MILLISECONDS);
+		assertTrue(isScheduled(timer));
+		executor.submit(timer::cancel).get();
+		assertFalse(isScheduled(timer));
+		assertFalse(fired.await(100, TimeUnit.MILLISECONDS));
+	}
+
+	@Test
+	public void testFar() throws Exception {
+		//more than one wheel turn, so timer is scheduled to executor directly
+		long start = System.nanoTime();
+		Timer timer = schedule(Constants.TIMER_TICK * 600, TimeUnit.MILLISECONDS);
+		assertTrue(isScheduled(timer));
+		assertTrue(fired.await(5, TimeUnit.SECONDS));
+		assertTrue((System.nanoTime() - start) >= TimeUnit.MILLISECONDS.toNanos(Constants.TIMER_TICK * 600));
+		assertFalse(isScheduled(timer));
+		assertEquals(1, runs.get());
+	}
+
+	@Test
+	public void testCancelFar() throws Exception {
+		Timer timer = schedule(Constants.TIMER_TICK * 600, TimeUnit.MILLISECONDS);
+		executor.submit(timer::cancel).get();
+		assertFalse(isScheduled(timer));
+		assertFalse(fired.await(Constants.TIMER_TICK * 800, TimeUnit.MILLISECONDS));
+	}
+
+	@Test
+	public void testRescheduleFarToNear() throws Exception {
+		Timer timer = schedule(10, TimeUnit.SECONDS);
+		executor.submit(() -> timer.schedule(5, TimeUnit.MILLISECONDS)).get();
+		assertTrue(fired.await(1, TimeUnit.SECONDS));
+		assertFalse(isScheduled(timer));
+		assertEquals(1, runs.get());
+	}
+
+}